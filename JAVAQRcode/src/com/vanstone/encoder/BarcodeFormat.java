@@ -37,6 +37,9 @@ public enum BarcodeFormat {
 	  /** QR Code 2D barcode format. */
 	  QR_CODE,
 
+	  /** Micro QR Code 2D barcode format (M1-M4). */
+	  MICRO_QR_CODE,
+
 	  /** RSS 14 */
 	  RSS_14,
 
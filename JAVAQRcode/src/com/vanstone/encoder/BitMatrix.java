@@ -254,6 +254,34 @@ public class BitMatrix implements Cloneable {
 		System.arraycopy(row.getBitArray(), 0, bits, y * rowSize, rowSize);
 	}
 
+	/**
+	 * 用打包的像素设置某一行，第x个bit在第x/32个int的第x%32位
+	 * @param y
+	 *            行
+	 * @param row
+	 *            数据源，至少 {@link #getRowSize()} 个int
+	 */
+	void setRow(int y, int[] row) {
+		System.arraycopy(row, 0, bits, y * rowSize, rowSize);
+	}
+
+	/**
+	 * 把第y行复制到紧接其后的count行
+	 * @param y
+	 *            源行
+	 * @param count
+	 *            复制的行数
+	 */
+	void replicateRow(int y, int count) {
+		if (y + count >= height) {
+			throw new IllegalArgumentException("区域越界");
+		}
+		int offset = y * rowSize;
+		for (int i = 1; i <= count; i++) {
+			System.arraycopy(bits, offset, bits, offset + i * rowSize, rowSize);
+		}
+	}
+
 	/**
 	 * 旋转180°
 	 */
@@ -0,0 +1,402 @@
+package com.vanstone.encoder;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按位压缩的掩码惩罚计算，结果与 {@link MaskUtil} 的四条规则完全相同。
+ * <p>
+ * 矩阵的每一行压缩成若干个 long（第 x 列位于第 x / 64 个字的第 x % 64 位），同时保存转置后的各列，
+ * 因此纵向规则也按行处理，不需要逐列跨行访问。各规则都以整字运算完成：
+ * </p>
+ * <ul>
+ *   <li>规则1：相邻模块相同的位为 ~(r ^ (r &lt;&lt; 1))，连续4位都相同的位置即长度不小于5的串中的模块，
+ *   再数出这些串的个数，惩罚为 位置数 + 2 * 串数；</li>
+ *   <li>规则2：相邻两行按位与（全黑）以及按位或非（全白），再与右移一位的自身相与，统计 2x2 同色块；</li>
+ *   <li>规则3：用移位后的字匹配 1011101，并检查左侧或右侧的 4 个模块是否全白（超出边界视为白）；</li>
+ *   <li>规则4：{@link Long#bitCount(long)} 统计黑色模块。</li>
+ * </ul>
+ * <p>
+ * 选择掩码时使用 {@link #calculatePenalty(int, int, AtomicLong)} 做分支限界：规则按代价从低到高
+ * （4、2、1、3）计算，规则1和规则3再分成行、列两部分，累计惩罚已经不可能胜出时放弃该掩码。
+ * </p>
+ * <p>
+ * 实例持有与维数相关的工作区，可以重复使用，但不是线程安全的。
+ * </p>
+ */
+public final class BitPackedMaskPenalty {
+
+  // Penalty weights from section 6.8.2.1
+  private static final int N1 = 3;
+  private static final int N2 = 3;
+  private static final int N3 = 40;
+  private static final int N4 = 10;
+
+  // calculatePenalty(int, int, AtomicLong) 中可以提前放弃的部分：规则1、规则3各分行、列两部分
+  private static final int NUM_BOUNDED_STAGES = 4;
+  // 三个位置探测图形各有 3 行、3 列构成 1011101，且外侧超出边界（视为白色），与掩码无关，
+  // 因此规则3的行、列两部分各至少有 9 处
+  private static final int FINDER_RULE3_PENALTY = 9 * N3;
+
+  private final int dimension;
+  private final int wordsPerRow;
+  private final long[] rows;
+  private final long[] columns;
+  // 每行中有效位（x < dimension）的掩码
+  private final long[] validBits;
+  private final long[] scratch1;
+  private final long[] scratch2;
+
+  public BitPackedMaskPenalty(int dimension) {
+    this.dimension = dimension;
+    this.wordsPerRow = (dimension + 63) >>> 6;
+    this.rows = new long[dimension * wordsPerRow];
+    this.columns = new long[dimension * wordsPerRow];
+    this.validBits = new long[wordsPerRow];
+    for (int x = 0; x < dimension; x++) {
+      validBits[x >>> 6] |= 1L << (x & 0x3F);
+    }
+    this.scratch1 = new long[wordsPerRow];
+    this.scratch2 = new long[wordsPerRow];
+  }
+
+  public int getDimension() {
+    return dimension;
+  }
+
+  /**
+   * 载入一个矩阵，值为 1 的模块视为黑色
+   */
+  public void setMatrix(ByteMatrix matrix) {
+    if (matrix.getWidth() != dimension || matrix.getHeight() != dimension) {
+      throw new IllegalArgumentException("Matrix dimension does not match: " + matrix.getWidth());
+    }
+    Arrays.fill(rows, 0L);
+    Arrays.fill(columns, 0L);
+    byte[][] array = matrix.getArray();
+    for (int y = 0; y < dimension; y++) {
+      byte[] arrayY = array[y];
+      int rowOffset = y * wordsPerRow;
+      long yBit = 1L << (y & 0x3F);
+      int yWord = y >>> 6;
+      for (int x = 0; x < dimension; x++) {
+        if (arrayY[x] == 1) {
+          rows[rowOffset + (x >>> 6)] |= 1L << (x & 0x3F);
+          columns[x * wordsPerRow + yWord] |= yBit;
+        }
+      }
+    }
+  }
+
+  /**
+   * 载入 unmasked 加上掩码位平面 plane 之后的矩阵：行、列都只需按字异或
+   */
+  void setMaskedMatrix(BitPackedMaskPenalty unmasked, MaskBitplane plane) {
+    if (unmasked.dimension != dimension || plane.getDimension() != dimension) {
+      throw new IllegalArgumentException("Matrix dimension does not match: " + unmasked.dimension);
+    }
+    long[] planeRows = plane.getRows();
+    long[] planeColumns = plane.getColumns();
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = unmasked.rows[i] ^ planeRows[i];
+      columns[i] = unmasked.columns[i] ^ planeColumns[i];
+    }
+  }
+
+  /**
+   * 设置单个模块，value 为 true 时为黑色
+   */
+  void set(int x, int y, boolean value) {
+    long xBit = 1L << (x & 0x3F);
+    long yBit = 1L << (y & 0x3F);
+    int rowIndex = y * wordsPerRow + (x >>> 6);
+    int columnIndex = x * wordsPerRow + (y >>> 6);
+    if (value) {
+      rows[rowIndex] |= xBit;
+      columns[columnIndex] |= yBit;
+    } else {
+      rows[rowIndex] &= ~xBit;
+      columns[columnIndex] &= ~yBit;
+    }
+  }
+
+  /**
+   * 与 {@link MatrixUtil#embedTypeInfo(int, ByteMatrix)} 相同，放置15位格式信息
+   */
+  void setTypeInfo(int typeInfo) {
+    for (int i = 0; i < 15; i++) {
+      boolean bit = ((typeInfo >>> i) & 1) != 0;
+      for (int copy = 0; copy < 2; copy++) {
+        int module = MatrixUtil.getTypeInfoModule(i, copy, dimension);
+        set(module & 0xFF, module >>> 8, bit);
+      }
+    }
+  }
+
+  /**
+   * {@link MaskSelectionStrategy#SAMPLED} 的惩罚：规则1、3 只计算第 0、step、2 * step ... 行和列，
+   * 规则2 只计算这些行与其下一行构成的各对，规则4 统计全部模块。只用于在同一矩阵的各掩码之间比较
+   */
+  public int calculateSampledPenalty(int step) {
+    if (step < 1) {
+      throw new IllegalArgumentException("Step must be positive: " + step);
+    }
+    return applyRule1(rows, step, Integer.MAX_VALUE) + applyRule1(columns, step, Integer.MAX_VALUE)
+        + applyRule2(step)
+        + applyRule3(rows, step, Integer.MAX_VALUE) + applyRule3(columns, step, Integer.MAX_VALUE)
+        + applyRule4();
+  }
+
+  /**
+   * {@link MaskSelectionStrategy#FAST} 的惩罚：规则1、2、4 之和，不计算规则3
+   */
+  public int calculateFastPenalty() {
+    return applyRule1() + applyRule2() + applyRule4();
+  }
+
+  /**
+   * 候选掩码的比较键：惩罚在高位，掩码编号在低 3 位，因此惩罚相同时编号较小的掩码较优，
+   * 与依次比较全部掩码、只在严格更小时替换的选择结果一致
+   */
+  public static long maskKey(int penalty, int maskPattern) {
+    return ((long) penalty << 3) | maskPattern;
+  }
+
+  /**
+   * 在已经算出的规则4与规则2惩罚上，依次累加规则1的行、规则1的列、规则3的行、规则3的列。
+   * 各部分惩罚都不为负，累计惩罚加上剩余部分的下界一旦超过胜出所允许的最大值，该掩码就不可能胜出，
+   * 立即放弃（每处理完一行或一列检查一次）。完整计算且更优时用 CAS 更新 bestKey，
+   * 因此多个线程可以共享同一个 bestKey。
+   *
+   * @param estimate 当前矩阵的 {@link #applyRule4()} 与 {@link #applyRule2()} 之和
+   * @param bestKey 目前最优掩码的 {@link #maskKey(int, int)}，尚无时为 {@link Long#MAX_VALUE}
+   */
+  public void calculatePenalty(int maskPattern, int estimate, AtomicLong bestKey) {
+    int penalty = estimate;
+    int stage = 0;
+    while (stage < NUM_BOUNDED_STAGES) {
+      int limit = maxWinningPenalty(maskPattern, bestKey.get()) - penalty - lowerBoundAfter(stage);
+      if (limit < 0) {
+        break;
+      }
+      int stagePenalty;
+      switch (stage) {
+        case 0:
+          stagePenalty = applyRule1(rows, 1, limit);
+          break;
+        case 1:
+          stagePenalty = applyRule1(columns, 1, limit);
+          break;
+        case 2:
+          stagePenalty = applyRule3(rows, 1, limit);
+          break;
+        default:
+          stagePenalty = applyRule3(columns, 1, limit);
+          break;
+      }
+      penalty += stagePenalty;
+      stage++;
+      if (stagePenalty > limit) {
+        // 该部分中途放弃，算作没有完成
+        stage--;
+        break;
+      }
+    }
+    if (stage == NUM_BOUNDED_STAGES) {
+      long key = maskKey(penalty, maskPattern);
+      long current = bestKey.get();
+      while (key < current && !bestKey.compareAndSet(current, key)) {
+        current = bestKey.get();
+      }
+    }
+  }
+
+  /**
+   * @return 第 stage 部分之后其余各部分惩罚之和的下界
+   */
+  private static int lowerBoundAfter(int stage) {
+    switch (stage) {
+      case 0:
+      case 1:
+        return 2 * FINDER_RULE3_PENALTY;
+      case 2:
+        return FINDER_RULE3_PENALTY;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * @return 该掩码要胜过 bestKey 所允许的最大惩罚，可能为负
+   */
+  private static int maxWinningPenalty(int maskPattern, long bestKey) {
+    if (bestKey == Long.MAX_VALUE) {
+      return Integer.MAX_VALUE;
+    }
+    int bestPenalty = (int) (bestKey >>> 3);
+    int bestMaskPattern = (int) (bestKey & 0x07);
+    return maskPattern < bestMaskPattern ? bestPenalty : bestPenalty - 1;
+  }
+
+  /**
+   * @see MaskUtil#applyMaskPenaltyRule1(ByteMatrix)
+   */
+  public int applyRule1() {
+    return applyRule1(rows, 1, Integer.MAX_VALUE) + applyRule1(columns, 1, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @see MaskUtil#applyMaskPenaltyRule2(ByteMatrix)
+   */
+  public int applyRule2() {
+    return applyRule2(1);
+  }
+
+  /**
+   * @return 规则2在第 0、step、2 * step ... 行与其下一行构成的各对上的惩罚
+   */
+  private int applyRule2(int step) {
+    int count = 0;
+    long[] dark = scratch1;
+    long[] light = scratch2;
+    for (int y = 0; y < dimension - 1; y += step) {
+      int a = y * wordsPerRow;
+      int b = a + wordsPerRow;
+      for (int i = 0; i < wordsPerRow; i++) {
+        dark[i] = rows[a + i] & rows[b + i];
+        light[i] = ~(rows[a + i] | rows[b + i]) & validBits[i];
+      }
+      for (int i = 0; i < wordsPerRow; i++) {
+        count += Long.bitCount(dark[i] & shiftDown(dark, 0, i, 1));
+        count += Long.bitCount(light[i] & shiftDown(light, 0, i, 1));
+      }
+    }
+    return N2 * count;
+  }
+
+  /**
+   * @see MaskUtil#applyMaskPenaltyRule3(ByteMatrix)
+   */
+  public int applyRule3() {
+    return applyRule3(rows, 1, Integer.MAX_VALUE) + applyRule3(columns, 1, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @see MaskUtil#applyMaskPenaltyRule4(ByteMatrix)
+   */
+  public int applyRule4() {
+    int numDarkCells = 0;
+    for (long word : rows) {
+      numDarkCells += Long.bitCount(word);
+    }
+    int numTotalCells = dimension * dimension;
+    int fivePercentVariances = Math.abs(numDarkCells * 2 - numTotalCells) * 10 / numTotalCells;
+    return fivePercentVariances * N4;
+  }
+
+  /**
+   * @return 规则1在第 0、step、2 * step ... 行上的惩罚；一旦超过 limit 就停止并返回已经累计的部分
+   */
+  private int applyRule1(long[] lines, int step, int limit) {
+    int numRunCells = 0;
+    int numRuns = 0;
+    long[] same = scratch1;
+    long[] runs = scratch2;
+    for (int line = 0; line < dimension; line += step) {
+      int offset = line * wordsPerRow;
+      // same 的第 x 位：模块 x 与模块 x - 1 颜色相同（x >= 1）
+      for (int i = 0; i < wordsPerRow; i++) {
+        same[i] = ~(lines[offset + i] ^ shiftUp(lines, offset, i, 1)) & validBits[i];
+      }
+      same[0] &= ~1L;
+      // runs 的第 x 位：模块 x - 4 到 x 颜色相同，即位于长度不小于5的串中第5个及之后的模块
+      for (int i = 0; i < wordsPerRow; i++) {
+        runs[i] = same[i] & shiftUp(same, 0, i, 1) & shiftUp(same, 0, i, 2) & shiftUp(same, 0, i, 3);
+      }
+      for (int i = 0; i < wordsPerRow; i++) {
+        numRunCells += Long.bitCount(runs[i]);
+        // 每个串的第一个这样的位置
+        numRuns += Long.bitCount(runs[i] & ~shiftUp(runs, 0, i, 1));
+      }
+      if (numRunCells + (N1 - 1) * numRuns > limit) {
+        break;
+      }
+    }
+    // 长度为 L 的串惩罚为 N1 + (L - 5) = (L - 4) + 2
+    return numRunCells + (N1 - 1) * numRuns;
+  }
+
+  /**
+   * @return 规则3在第 0、step、2 * step ... 行上的惩罚；一旦超过 limit 就停止并返回已经累计的部分
+   */
+  private int applyRule3(long[] lines, int step, int limit) {
+    int numPenalties = 0;
+    for (int line = 0; line < dimension; line += step) {
+      int offset = line * wordsPerRow;
+      for (int i = 0; i < wordsPerRow; i++) {
+        long r = lines[offset + i];
+        // 以 x 开始的 1011101
+        long pattern = r
+            & ~shiftDown(lines, offset, i, 1)
+            & shiftDown(lines, offset, i, 2)
+            & shiftDown(lines, offset, i, 3)
+            & shiftDown(lines, offset, i, 4)
+            & ~shiftDown(lines, offset, i, 5)
+            & shiftDown(lines, offset, i, 6);
+        if (pattern == 0) {
+          continue;
+        }
+        // x - 4 到 x - 1 中是否有黑色，x + 7 到 x + 10 中是否有黑色；边界外移入的都是 0，即白色
+        long darkBefore = shiftUp(lines, offset, i, 1)
+            | shiftUp(lines, offset, i, 2)
+            | shiftUp(lines, offset, i, 3)
+            | shiftUp(lines, offset, i, 4);
+        long darkAfter = shiftDown(lines, offset, i, 7)
+            | shiftDown(lines, offset, i, 8)
+            | shiftDown(lines, offset, i, 9)
+            | shiftDown(lines, offset, i, 10);
+        numPenalties += Long.bitCount(pattern & (~darkBefore | ~darkAfter) & patternStarts(i));
+      }
+      if (N3 * numPenalties > limit) {
+        break;
+      }
+    }
+    return N3 * numPenalties;
+  }
+
+  // 可以作为 1011101 起点的位：x + 6 < dimension
+  private long patternStarts(int word) {
+    int limit = dimension - 6;
+    int first = word << 6;
+    if (limit <= first) {
+      return 0L;
+    }
+    if (limit >= first + 64) {
+      return -1L;
+    }
+    return (1L << (limit - first)) - 1;
+  }
+
+  /**
+   * @return 把一行整体向高位移动 k 位后的第 i 个字，即新的第 x 位为原第 x - k 位，低位补 0
+   */
+  private long shiftUp(long[] line, int offset, int i, int k) {
+    long result = line[offset + i] << k;
+    if (i > 0) {
+      result |= line[offset + i - 1] >>> (64 - k);
+    }
+    return result;
+  }
+
+  /**
+   * @return 把一行整体向低位移动 k 位后的第 i 个字，即新的第 x 位为原第 x + k 位，高位补 0
+   */
+  private long shiftDown(long[] line, int offset, int i, int k) {
+    long result = line[offset + i] >>> k;
+    if (i + 1 < wordsPerRow) {
+      result |= line[offset + i + 1] << (64 - k);
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,200 @@
+package com.vanstone.encoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 编码流程使用的 bits 缓冲区。
+ * <p>
+ * 与 {@link BitArray} 不同，内部直接按码字存放：byte[] 中每个字节就是一个码字，字节内最高位在前，
+ * 与二维码码字的位序一致，因此 {@link #getBytes()} 可以直接切分成数据块交给纠错码计算。
+ * 追加时一次写入最多 32 位（long 为 64 位），用移位和掩码完成，不逐位循环；存储空间按倍数增长。
+ * </p>
+ * <p>
+ * 约定：getSize() 之后的所有位始终为 0。
+ * </p>
+ */
+public final class BitWriter {
+
+  private byte[] bytes;
+  private int size;
+
+  public BitWriter() {
+    this(32);
+  }
+
+  /**
+   * @param initialCapacityInBytes 初始容量，单位：字节
+   */
+  public BitWriter(int initialCapacityInBytes) {
+    this.bytes = new byte[Math.max(1, initialCapacityInBytes)];
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public int getSizeInBytes() {
+    return (size + 7) >>> 3;
+  }
+
+  /**
+   * @return 内部存储的码字，前 {@link #getSizeInBytes()} 个字节有效，调用者不得修改
+   */
+  public byte[] getBytes() {
+    return bytes;
+  }
+
+  /**
+   * @param i 希望得到的bit，0为第一个追加的bit
+   * @return true 如果该bit被置1
+   */
+  public boolean get(int i) {
+    return ((bytes[i >>> 3] >>> (7 - (i & 0x07))) & 1) != 0;
+  }
+
+  /**
+   * 清空所有bits并将长度置0，保留已分配的存储空间
+   */
+  public void reset() {
+    Arrays.fill(bytes, 0, getSizeInBytes(), (byte) 0);
+    size = 0;
+  }
+
+  public void appendBit(boolean bit) {
+    ensureCapacity(size + 1);
+    if (bit) {
+      bytes[size >>> 3] |= 0x80 >>> (size & 0x07);
+    }
+    size++;
+  }
+
+  /**
+   * 追加 value 的低 numBits 位，从最高有效位到最低有效位
+   *
+   * @param value 需要追加的bits
+   * @param numBits 追加的位数，0 到 32
+   */
+  public void appendBits(int value, int numBits) {
+    if (numBits < 0 || numBits > 32) {
+      throw new IllegalArgumentException("Num bits must be between 0 and 32");
+    }
+    if (numBits == 0) {
+      return;
+    }
+    int end = size + numBits;
+    ensureCapacity(end);
+    // 当前字节已用 size & 7 位，最多跨越5个字节。把值左对齐到一个40位的窗口，
+    // 窗口最高位对应当前字节的第一个空位，然后逐字节取出
+    int bitOffset = size & 0x07;
+    long window = (value & (0xFFFFFFFFL >>> (32 - numBits))) << (40 - bitOffset - numBits);
+    int index = size >>> 3;
+    int lastIndex = (end - 1) >>> 3;
+    bytes[index] |= (byte) (window >>> 32);
+    for (int i = index + 1, shift = 24; i <= lastIndex; i++, shift -= 8) {
+      bytes[i] = (byte) (window >>> shift);
+    }
+    size = end;
+  }
+
+  /**
+   * 追加 value 的低 numBits 位，从最高有效位到最低有效位
+   *
+   * @param numBits 追加的位数，0 到 64
+   */
+  public void appendBits(long value, int numBits) {
+    if (numBits < 0 || numBits > 64) {
+      throw new IllegalArgumentException("Num bits must be between 0 and 64");
+    }
+    if (numBits > 32) {
+      appendBits((int) (value >>> 32), numBits - 32);
+      appendBits((int) value, 32);
+    } else {
+      appendBits((int) value, numBits);
+    }
+  }
+
+  /**
+   * 追加 length 个完整的字节
+   */
+  public void appendBytes(byte[] src, int offset, int length) {
+    if (length == 0) {
+      return;
+    }
+    ensureCapacity(size + length * 8);
+    int index = size >>> 3;
+    int bitOffset = size & 0x07;
+    if (bitOffset == 0) {
+      System.arraycopy(src, offset, bytes, index, length);
+    } else {
+      // 每个源字节分成两半，高位部分补在当前字节末尾，低位部分放到下一个字节开头
+      int leftShift = 8 - bitOffset;
+      for (int i = 0; i < length; i++) {
+        int b = src[offset + i] & 0xFF;
+        bytes[index] |= (byte) (b >>> bitOffset);
+        bytes[++index] = (byte) (b << leftShift);
+      }
+    }
+    size += length * 8;
+  }
+
+  /**
+   * 追加 src 中从 position 到 limit 的字节，不改变 src 的 position；堆缓冲区直接从其数组复制
+   */
+  public void appendBytes(ByteBuffer src) {
+    int position = src.position();
+    int length = src.remaining();
+    if (src.hasArray()) {
+      appendBytes(src.array(), src.arrayOffset() + position, length);
+      return;
+    }
+    if (length == 0) {
+      return;
+    }
+    ensureCapacity(size + length * 8);
+    int index = size >>> 3;
+    int bitOffset = size & 0x07;
+    if (bitOffset == 0) {
+      for (int i = 0; i < length; i++) {
+        bytes[index + i] = src.get(position + i);
+      }
+    } else {
+      int leftShift = 8 - bitOffset;
+      for (int i = 0; i < length; i++) {
+        int b = src.get(position + i) & 0xFF;
+        bytes[index] |= (byte) (b >>> bitOffset);
+        bytes[++index] = (byte) (b << leftShift);
+      }
+    }
+    size += length * 8;
+  }
+
+  public void appendBitWriter(BitWriter other) {
+    int fullBytes = other.size >>> 3;
+    appendBytes(other.bytes, 0, fullBytes);
+    int remainder = other.size & 0x07;
+    if (remainder > 0) {
+      appendBits((other.bytes[fullBytes] & 0xFF) >>> (8 - remainder), remainder);
+    }
+  }
+
+  private void ensureCapacity(int newSize) {
+    int needed = (newSize + 7) >>> 3;
+    if (needed > bytes.length) {
+      bytes = Arrays.copyOf(bytes, Math.max(needed, bytes.length * 2));
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder(size + size / 8);
+    for (int i = 0; i < size; i++) {
+      if ((i & 0x07) == 0) {
+        result.append(' ');
+      }
+      result.append(get(i) ? 'X' : '.');
+    }
+    return result.toString();
+  }
+
+}
@@ -0,0 +1,214 @@
+package com.vanstone.encoder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * 把二维码矩阵放大后连同空白区直接写入调用者提供的 {@link ByteBuffer}（堆内或直接缓冲区），
+ * 用于打印机驱动、网络层等需要原生内存的下游，不经过 {@link BitMatrix} 或 int[] 光栅。
+ * <p>
+ * 每个模块行只生成一次像素（放在一行大小的数组中），再整行写入目标缓冲区 scale 次；空白区的行也只生成一次。
+ * 图像从缓冲区当前的 position 开始，每行相隔 rowStride 字节，行尾到下一行之间的字节不修改；
+ * 缓冲区的 position 和 limit 都不改变。
+ * </p>
+ */
+public final class BufferRenderer {
+
+  /**
+   * 像素格式
+   */
+  public enum PixelFormat {
+    /** 每像素 1 位，高位在左，1 为黑色、0 为白色；行尾不足一个字节的位为 0 */
+    MONO,
+    /** 每像素 1 字节灰度，0 为黑色、255 为白色 */
+    GRAY8,
+    /** 每像素 4 字节，按缓冲区的字节序写入 int 0xAARRGGBB：黑色 0xFF000000，白色 0xFFFFFFFF */
+    ARGB
+  }
+
+  private BufferRenderer() {
+  }
+
+  /**
+   * @return 加上空白区并放大后的图像宽度（像素）
+   */
+  public static int getImageWidth(ByteMatrix matrix, int scale, int quietZone) {
+    return checkedSize(matrix.getWidth(), scale, quietZone);
+  }
+
+  /**
+   * @return 加上空白区并放大后的图像高度（像素）
+   */
+  public static int getImageHeight(ByteMatrix matrix, int scale, int quietZone) {
+    return checkedSize(matrix.getHeight(), scale, quietZone);
+  }
+
+  /**
+   * @return 宽度为 imageWidth 像素的一行至少需要的字节数，即最小的 rowStride
+   */
+  public static int getRowLength(PixelFormat format, int imageWidth) {
+    switch (format) {
+      case MONO:
+        return (imageWidth + 7) / 8;
+      case GRAY8:
+        return imageWidth;
+      default:
+        if (imageWidth > Integer.MAX_VALUE / 4) {
+          throw new IllegalArgumentException("Image too large: " + imageWidth);
+        }
+        return imageWidth * 4;
+    }
+  }
+
+  /**
+   * 以最紧凑的行跨度（{@link #getRowLength}）写入
+   *
+   * @see #render(ByteMatrix, int, int, PixelFormat, ByteBuffer, int)
+   */
+  public static void render(ByteMatrix matrix, int scale, int quietZone, PixelFormat format, ByteBuffer target) {
+    render(matrix, scale, quietZone, format, target,
+        getRowLength(format, getImageWidth(matrix, scale, quietZone)));
+  }
+
+  /**
+   * @param matrix 二维码矩阵，1 为黑色，例如 {@link QRCode#getMatrix()}
+   * @param scale 每个模块的像素数
+   * @param quietZone 四周空白区的模块数
+   * @param format 像素格式
+   * @param target 目标缓冲区，从其 position 开始写入
+   * @param rowStride 相邻两行起点之间的字节数，不小于 {@link #getRowLength}
+   * @throws IllegalArgumentException 如果参数无效或者 position 之后的空间放不下整个图像
+   */
+  public static void render(ByteMatrix matrix,
+                            int scale,
+                            int quietZone,
+                            PixelFormat format,
+                            ByteBuffer target,
+                            int rowStride) {
+    int imageWidth = getImageWidth(matrix, scale, quietZone);
+    int imageHeight = getImageHeight(matrix, scale, quietZone);
+    int rowLength = getRowLength(format, imageWidth);
+    if (rowStride < rowLength) {
+      throw new IllegalArgumentException("Row stride " + rowStride + " is less than row length " + rowLength);
+    }
+    long required = (long) rowStride * (imageHeight - 1) + rowLength;
+    if (required > target.remaining()) {
+      throw new IllegalArgumentException("Buffer too small: " + required + " bytes required, "
+          + target.remaining() + " remaining");
+    }
+
+    ByteBuffer output = target.duplicate();
+    int position = target.position();
+    byte[] row = new byte[rowLength];
+    int leftPadding = quietZone * scale;
+    MatrixRenderer renderer = format == PixelFormat.MONO
+        ? new MatrixRenderer(matrix.getWidth(), scale, leftPadding, imageWidth) : null;
+    byte[] black = pixelBytes(format, true, target.order());
+    byte[] white = pixelBytes(format, false, target.order());
+
+    // 上方空白区
+    clear(row, format, white);
+    int quietRows = quietZone * scale;
+    for (int i = 0; i < quietRows; i++, position += rowStride) {
+      put(output, position, row);
+    }
+    byte[][] modules = matrix.getArray();
+    for (int y = 0; y < matrix.getHeight(); y++) {
+      if (renderer != null) {
+        renderMono(renderer.renderRow(modules[y]), row);
+      } else {
+        clear(row, format, white);
+        renderRuns(modules[y], scale, leftPadding, black, row);
+      }
+      for (int i = 0; i < scale; i++, position += rowStride) {
+        put(output, position, row);
+      }
+    }
+    // 下方空白区
+    clear(row, format, white);
+    for (int i = 0; i < quietRows; i++, position += rowStride) {
+      put(output, position, row);
+    }
+  }
+
+  private static int checkedSize(int modules, int scale, int quietZone) {
+    if (scale < 1) {
+      throw new IllegalArgumentException("Scale must be positive: " + scale);
+    }
+    if (quietZone < 0) {
+      throw new IllegalArgumentException("Negative quiet zone: " + quietZone);
+    }
+    long size = (modules + 2L * quietZone) * scale;
+    if (size > Integer.MAX_VALUE - 31) {
+      throw new IllegalArgumentException("Image too large: " + size);
+    }
+    return (int) size;
+  }
+
+  // MatrixRenderer 的像素行为低位在左，MONO 为高位在左；两者都是 1 为黑色
+  private static void renderMono(int[] pixels, byte[] row) {
+    if (pixels == null) {
+      Arrays.fill(row, (byte) 0);
+      return;
+    }
+    for (int i = 0; i < row.length; i++) {
+      int word = Integer.reverse(pixels[i >>> 2]);
+      row[i] = (byte) (word >>> (24 - ((i & 0x03) << 3)));
+    }
+  }
+
+  // 按连续的黑色模块填充 GRAY8 或 ARGB 像素
+  private static void renderRuns(byte[] modules, int scale, int leftPadding, byte[] black, byte[] row) {
+    int pixelSize = black.length;
+    int x = 0;
+    while (x < modules.length) {
+      if (modules[x] != 1) {
+        x++;
+        continue;
+      }
+      int start = x;
+      while (x < modules.length && modules[x] == 1) {
+        x++;
+      }
+      int from = (leftPadding + start * scale) * pixelSize;
+      int to = (leftPadding + x * scale) * pixelSize;
+      if (pixelSize == 1) {
+        Arrays.fill(row, from, to, black[0]);
+      } else {
+        for (int i = from; i < to; i += pixelSize) {
+          System.arraycopy(black, 0, row, i, pixelSize);
+        }
+      }
+    }
+  }
+
+  private static void clear(byte[] row, PixelFormat format, byte[] white) {
+    if (format == PixelFormat.MONO) {
+      Arrays.fill(row, (byte) 0);
+    } else {
+      // GRAY8 与 ARGB 的白色都是全 1
+      Arrays.fill(row, white[0]);
+    }
+  }
+
+  // 一个像素的字节；MONO 不使用
+  private static byte[] pixelBytes(PixelFormat format, boolean dark, ByteOrder order) {
+    switch (format) {
+      case MONO:
+      case GRAY8:
+        return new byte[] {(byte) (dark ? 0 : 0xFF)};
+      default:
+        int argb = dark ? 0xFF000000 : 0xFFFFFFFF;
+        ByteBuffer pixel = ByteBuffer.allocate(4).order(order);
+        pixel.putInt(argb);
+        return pixel.array();
+    }
+  }
+
+  private static void put(ByteBuffer output, int position, byte[] row) {
+    output.position(position);
+    output.put(row);
+  }
+
+}
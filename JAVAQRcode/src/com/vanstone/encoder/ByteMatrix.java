@@ -56,6 +56,17 @@ public class ByteMatrix {
 		}
 	}
 
+	/**
+	 * @return 与此矩阵内容相同的新矩阵
+	 */
+	public ByteMatrix copy() {
+		ByteMatrix copy = new ByteMatrix(width, height);
+		for (int y = 0; y < height; ++y) {
+			System.arraycopy(bytes[y], 0, copy.bytes[y], 0, width);
+		}
+		return copy;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder result = new StringBuilder(2 * width * height + 2);
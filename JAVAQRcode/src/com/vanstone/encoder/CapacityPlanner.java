@@ -0,0 +1,314 @@
+package com.vanstone.encoder;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 二维码容量规划。
+ * <p>
+ * 各版本、各纠错等级的数据码字数以及各模式可容纳的字符数在类加载时一次算好，
+ * 选择版本时在表中二分查找，不再逐个遍历 {@link Version}。{@link #estimate} 只扫描内容并计算位数，
+ * 不构建矩阵，可在编码之前拒绝或分流过大的请求；估计的结果与实际编码时选择的版本相同。
+ * </p>
+ */
+public final class CapacityPlanner {
+
+  private static final int NUM_VERSIONS = 40;
+  private static final Mode[] CHARACTER_MODES = {Mode.NUMERIC, Mode.ALPHANUMERIC, Mode.BYTE, Mode.KANJI,
+      Mode.HANZI};
+
+  // DATA_CODEWORDS[ecLevel.ordinal()][versionNumber - 1]
+  private static final int[][] DATA_CODEWORDS;
+  // CHARACTER_CAPACITY[ecLevel.ordinal()][versionNumber - 1][CHARACTER_MODES 中的下标]
+  private static final int[][][] CHARACTER_CAPACITY;
+
+  static {
+    ErrorCorrectionLevel[] ecLevels = ErrorCorrectionLevel.values();
+    DATA_CODEWORDS = new int[ecLevels.length][NUM_VERSIONS];
+    CHARACTER_CAPACITY = new int[ecLevels.length][NUM_VERSIONS][CHARACTER_MODES.length];
+    for (ErrorCorrectionLevel ecLevel : ecLevels) {
+      for (int versionNum = 1; versionNum <= NUM_VERSIONS; versionNum++) {
+        Version version = Version.getVersionForNumber(versionNum);
+        int numDataBytes = version.getTotalCodewords()
+            - version.getECBlocksForLevel(ecLevel).getTotalECCodewords();
+        DATA_CODEWORDS[ecLevel.ordinal()][versionNum - 1] = numDataBytes;
+        for (int m = 0; m < CHARACTER_MODES.length; m++) {
+          CHARACTER_CAPACITY[ecLevel.ordinal()][versionNum - 1][m] =
+              computeCharacterCapacity(numDataBytes * 8, CHARACTER_MODES[m], version);
+        }
+      }
+    }
+  }
+
+  /**
+   * 一次估计的结果
+   */
+  public static final class Estimate {
+    private final Mode mode;
+    private final int numBits;
+    private final Version version;
+
+    Estimate(Mode mode, int numBits, Version version) {
+      this.mode = mode;
+      this.numBits = numBits;
+      this.version = version;
+    }
+
+    /**
+     * @return 编码时使用的模式；混合模式分段时为第一个数据段的模式
+     */
+    public Mode getMode() {
+      return mode;
+    }
+
+    /**
+     * @return 补齐之前的数据位数（包括 ECI、模式指示符和字符计数）
+     */
+    public int getNumBits() {
+      return numBits;
+    }
+
+    /**
+     * @return 编码时选择的版本，放不下时为 null
+     */
+    public Version getVersion() {
+      return version;
+    }
+
+    public boolean fits() {
+      return version != null;
+    }
+  }
+
+  private CapacityPlanner() {
+  }
+
+  /**
+   * @return 该版本、该纠错等级的数据码字数
+   */
+  public static int getNumDataCodewords(Version version, ErrorCorrectionLevel ecLevel) {
+    return DATA_CODEWORDS[ecLevel.ordinal()][version.getVersionNumber() - 1];
+  }
+
+  /**
+   * @param mode {@link Mode#NUMERIC}、{@link Mode#ALPHANUMERIC}、{@link Mode#BYTE}、{@link Mode#KANJI}
+   *   或 {@link Mode#HANZI}
+   * @return 只用一个 mode 数据段（不含 ECI）时最多能编码的字符数；BYTE 模式为字节数
+   */
+  public static int getCharacterCapacity(Version version, ErrorCorrectionLevel ecLevel, Mode mode) {
+    return CHARACTER_CAPACITY[ecLevel.ordinal()][version.getVersionNumber() - 1][modeIndex(mode)];
+  }
+
+  /**
+   * @return 能容纳 numInputBits 位数据的最小版本，没有时为 null
+   */
+  public static Version findVersion(int numInputBits, ErrorCorrectionLevel ecLevel) {
+    int[] capacities = DATA_CODEWORDS[ecLevel.ordinal()];
+    int totalInputBytes = (numInputBits + 7) / 8;
+    if (totalInputBytes > capacities[NUM_VERSIONS - 1]) {
+      return null;
+    }
+    // 数据码字数随版本单调递增，二分查找第一个不小于 totalInputBytes 的版本
+    int low = 0;
+    int high = NUM_VERSIONS - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (capacities[middle] >= totalInputBytes) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return Version.getVersionForNumber(low + 1);
+  }
+
+  /**
+   * @return 能容纳 numInputBits 位数据的最小版本
+   * @throws WriterException 如果最大版本也放不下
+   */
+  public static Version chooseVersion(int numInputBits, ErrorCorrectionLevel ecLevel) throws WriterException {
+    Version version = findVersion(numInputBits, ecLevel);
+    if (version == null) {
+      throw new WriterException("Data too big");
+    }
+    return version;
+  }
+
+  /**
+   * @return numInputBits 位数据是否放得进某个版本
+   */
+  public static boolean fits(int numInputBits, ErrorCorrectionLevel ecLevel) {
+    return findVersion(numInputBits, ecLevel) != null;
+  }
+
+  /**
+   * 估计编码 content 所需的位数和版本，选择与 {@link QREncoder#encode(CharSequence, ErrorCorrectionLevel, Map)}
+   * 完全相同，但不构建矩阵
+   *
+   * @throws WriterException 如果不支持 hints 中的字符编码
+   */
+  public static Estimate estimate(CharSequence content,
+                                  ErrorCorrectionLevel ecLevel,
+                                  Map<EncodeHintType,?> hints) throws WriterException {
+    if (ContentAnalysis.useGS1(hints)) {
+      return estimateGS1(content, ecLevel);
+    }
+    String encodingName = hints == null ? null : (String) hints.get(EncodeHintType.CHARACTER_SET);
+    if (encodingName == null) {
+      encodingName = QREncoder.DEFAULT_BYTE_MODE_ENCODING;
+    }
+    CharacterEncoding encoding = CharacterEncoding.forName(encodingName);
+    ContentAnalysis analysis = new ContentAnalysis();
+    analysis.reset(content, encoding, ContentAnalysis.useHanzi(encoding, hints));
+    Mode mode = analysis.getMode();
+
+    int headerBits = getModeIndicatorBits(mode);
+    if (mode == Mode.BYTE && !encoding.isDefault() && encoding.getECI() != null) {
+      headerBits += 4 + 8;
+    }
+    int numLetters = mode == Mode.BYTE ? analysis.getNumBytes() : content.length();
+    int dataBits = getDataBitLength(mode, numLetters);
+    Version version = chooseSingleModeVersion(headerBits, mode, dataBits, ecLevel);
+
+    if (MixedModeSegmenter.mayBeShorter(analysis, mode)) {
+      MixedModeSegmenter segmenter = MixedModeSegmenter.segment(analysis, ecLevel, 0);
+      if (segmenter != null
+          && (version == null || segmenter.getVersion().getVersionNumber() < version.getVersionNumber())) {
+        return new Estimate(segmenter.getSegments().get(0).getMode(), segmenter.getBitLength(),
+            segmenter.getVersion());
+      }
+    }
+    Version countVersion = version == null ? Version.getVersionForNumber(NUM_VERSIONS) : version;
+    return new Estimate(mode, headerBits + mode.getCharacterCountBits(countVersion) + dataBits, version);
+  }
+
+  /**
+   * 与 {@link QREncoder#encodeGS1(List, ErrorCorrectionLevel, Map)} 的选择相同的估计
+   */
+  public static Estimate estimateGS1(List<GS1Element> elements, ErrorCorrectionLevel ecLevel) throws WriterException {
+    return estimateGS1(new GS1ElementString(elements), ecLevel);
+  }
+
+  private static Estimate estimateGS1(CharSequence content, ErrorCorrectionLevel ecLevel) throws WriterException {
+    ContentAnalysis analysis = new ContentAnalysis();
+    analysis.reset(content, CharacterEncoding.forName(QREncoder.DEFAULT_BYTE_MODE_ENCODING), false, true);
+    // FNC1 模式指示符 4 位
+    MixedModeSegmenter segmenter = MixedModeSegmenter.segment(analysis, ecLevel, 4);
+    if (segmenter != null) {
+      return new Estimate(segmenter.getSegments().get(0).getMode(), 4 + segmenter.getBitLength(),
+          segmenter.getVersion());
+    }
+    Version maxVersion = Version.getVersionForNumber(NUM_VERSIONS);
+    return new Estimate(analysis.getMode(), 4 + MixedModeSegmenter.getMinBitLength(analysis, maxVersion), null);
+  }
+
+  /**
+   * 估计以 BYTE 模式编码 numBytes 个字节的二进制数据所需的位数和版本，与
+   * {@link QREncoder#encode(byte[], int, int, ErrorCorrectionLevel, Map)} 的选择相同
+   *
+   * @throws WriterException 如果不支持 hints 中的字符编码
+   */
+  public static Estimate estimateBinary(int numBytes,
+                                        ErrorCorrectionLevel ecLevel,
+                                        Map<EncodeHintType,?> hints) throws WriterException {
+    int headerBits = 4;
+    String encodingName = hints == null ? null : (String) hints.get(EncodeHintType.CHARACTER_SET);
+    if (encodingName != null) {
+      CharacterEncoding encoding = CharacterEncoding.forName(encodingName);
+      if (!encoding.isDefault() && encoding.getECI() != null) {
+        headerBits += 4 + 8;
+      }
+    }
+    int dataBits = getDataBitLength(Mode.BYTE, numBytes);
+    Version version = chooseSingleModeVersion(headerBits, Mode.BYTE, dataBits, ecLevel);
+    Version countVersion = version == null ? Version.getVersionForNumber(NUM_VERSIONS) : version;
+    return new Estimate(Mode.BYTE, headerBits + Mode.BYTE.getCharacterCountBits(countVersion) + dataBits,
+        version);
+  }
+
+  /**
+   * 单一模式时的版本选择：先按版本 1 的字符计数位选出临时版本，再按临时版本的字符计数位重新选择
+   *
+   * @param headerBits ECI 与模式指示符的位数
+   * @param dataBits 数据部分的位数
+   * @return 选择的版本，放不下时为 null
+   */
+  static Version chooseSingleModeVersion(int headerBits,
+                                         Mode mode,
+                                         int dataBits,
+                                         ErrorCorrectionLevel ecLevel) {
+    Version provisionalVersion = findVersion(
+        headerBits + mode.getCharacterCountBits(Version.getVersionForNumber(1)) + dataBits, ecLevel);
+    if (provisionalVersion == null) {
+      return null;
+    }
+    return findVersion(headerBits + mode.getCharacterCountBits(provisionalVersion) + dataBits, ecLevel);
+  }
+
+  /**
+   * @return mode 的模式指示符位数：HANZI 模式为 4 位指示符加 4 位子集指示符，其余为 4 位
+   */
+  static int getModeIndicatorBits(Mode mode) {
+    return mode == Mode.HANZI ? 4 + 4 : 4;
+  }
+
+  /**
+   * @return numLetters 个字符（BYTE 模式为字节）以 mode 编码后数据部分的位数，不含模式指示符和字符计数
+   */
+  static int getDataBitLength(Mode mode, int numLetters) {
+    switch (mode) {
+      case NUMERIC:
+        return numLetters / 3 * 10 + (numLetters % 3 == 0 ? 0 : numLetters % 3 == 1 ? 4 : 7);
+      case ALPHANUMERIC:
+        return numLetters / 2 * 11 + (numLetters % 2) * 6;
+      case BYTE:
+        return numLetters * 8;
+      case KANJI:
+      case HANZI:
+        return numLetters * 13;
+      default:
+        throw new IllegalArgumentException("Unsupported mode: " + mode);
+    }
+  }
+
+  private static int computeCharacterCapacity(int capacityBits, Mode mode, Version version) {
+    int characterCountBits = mode.getCharacterCountBits(version);
+    int available = capacityBits - getModeIndicatorBits(mode) - characterCountBits;
+    if (available <= 0) {
+      return 0;
+    }
+    // 从每字符的平均位数估计，再逐个调整到恰好放得下
+    int numLetters;
+    switch (mode) {
+      case NUMERIC:
+        numLetters = available * 3 / 10;
+        break;
+      case ALPHANUMERIC:
+        numLetters = available * 2 / 11;
+        break;
+      case BYTE:
+        numLetters = available / 8;
+        break;
+      default:
+        numLetters = available / 13;
+        break;
+    }
+    while (numLetters > 0 && getDataBitLength(mode, numLetters) > available) {
+      numLetters--;
+    }
+    while (getDataBitLength(mode, numLetters + 1) <= available) {
+      numLetters++;
+    }
+    return Math.min(numLetters, (1 << characterCountBits) - 1);
+  }
+
+  private static int modeIndex(Mode mode) {
+    for (int m = 0; m < CHARACTER_MODES.length; m++) {
+      if (CHARACTER_MODES[m] == mode) {
+        return m;
+      }
+    }
+    throw new IllegalArgumentException("Unsupported mode: " + mode);
+  }
+
+}
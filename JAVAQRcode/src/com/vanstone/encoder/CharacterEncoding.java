@@ -0,0 +1,125 @@
+package com.vanstone.encoder;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 字符编码名称解析后的结果：{@link Charset}、对应的 {@link CharacterSetECI} 以及转码时可用的快速路径。
+ * <p>
+ * {@link EncodeHintType#CHARACTER_SET} 以字符串传入，每个名称只在第一次使用时查找一次字符集和 ECI，
+ * 之后从缓存中取得。缓存可被多个线程共享；并发首次使用时可能重复解析，但结果相同。
+ * </p>
+ */
+final class CharacterEncoding {
+
+  /** 转码方式：ISO-8859-1 的字符值就是字节值 */
+  static final int LATIN1 = 0;
+  /** 转码方式：按 UTF-8 规则直接计算字节 */
+  static final int UTF8 = 1;
+  /** 转码方式：使用 {@link CharsetEncoder} */
+  static final int GENERIC = 2;
+
+  private static final ConcurrentMap<String,CharacterEncoding> ENCODINGS = new ConcurrentHashMap<>();
+
+  private final String name;
+  private final Charset charset;
+  private final CharacterSetECI eci;
+  private final int kind;
+  private final boolean shiftJis;
+  private final boolean chinese;
+  private final boolean defaultEncoding;
+
+  private CharacterEncoding(String name, Charset charset) {
+    this.name = name;
+    this.charset = charset;
+    // 与原来的 getCharacterSetECIByName(encoding) 相同，按传入的名称查找
+    this.eci = CharacterSetECI.getCharacterSetECIByName(name);
+    if (StandardCharsets.ISO_8859_1.equals(charset)) {
+      kind = LATIN1;
+    } else if (StandardCharsets.UTF_8.equals(charset)) {
+      kind = UTF8;
+    } else {
+      kind = GENERIC;
+    }
+    this.shiftJis = "Shift_JIS".equals(name);
+    String charsetName = charset.name();
+    this.chinese = "GB2312".equals(charsetName) || "GBK".equals(charsetName) || "GB18030".equals(charsetName);
+    this.defaultEncoding = QREncoder.DEFAULT_BYTE_MODE_ENCODING.equals(name);
+  }
+
+  /**
+   * @return 名称为 name 的字符编码，第一次使用时解析
+   * @throws WriterException 如果不支持该字符编码
+   */
+  static CharacterEncoding forName(String name) throws WriterException {
+    CharacterEncoding encoding = ENCODINGS.get(name);
+    if (encoding == null) {
+      Charset charset;
+      try {
+        charset = Charset.forName(name);
+      } catch (IllegalArgumentException iae) {
+        throw new WriterException(iae);
+      }
+      encoding = new CharacterEncoding(name, charset);
+      CharacterEncoding previous = ENCODINGS.putIfAbsent(name, encoding);
+      if (previous != null) {
+        encoding = previous;
+      }
+    }
+    return encoding;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * @return 对应的 ECI，不支持时为 null
+   */
+  CharacterSetECI getECI() {
+    return eci;
+  }
+
+  /**
+   * @return {@link #LATIN1}、{@link #UTF8} 或 {@link #GENERIC}
+   */
+  int getKind() {
+    return kind;
+  }
+
+  boolean isShiftJis() {
+    return shiftJis;
+  }
+
+  /**
+   * @return 是否为 GB2312、GBK 或 GB18030，此时默认使用 HANZI 模式
+   */
+  boolean isChinese() {
+    return chinese;
+  }
+
+  /**
+   * @return 是否就是默认的 {@link QREncoder#DEFAULT_BYTE_MODE_ENCODING}，此时 BYTE 模式不需要 ECI
+   */
+  boolean isDefault() {
+    return defaultEncoding;
+  }
+
+  /**
+   * @return 新的编码器，无法映射或不合法的字符替换为默认的替换字节，与 {@link String#getBytes(String)} 相同
+   */
+  CharsetEncoder newEncoder() {
+    return charset.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+}
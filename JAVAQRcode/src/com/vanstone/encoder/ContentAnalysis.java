@@ -0,0 +1,393 @@
+package com.vanstone.encoder;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.util.Map;
+
+/**
+ * 对待编码内容的一次扫描结果。
+ * <p>
+ * 只遍历内容一次：同时给每个字符分类（数字、字母数字、汉字、其他），得到单一模式下应选的模式，
+ * 并把内容按字符编码转码一次，记录每个字符在字节中的起始位置。之后选择模式、混合模式分段以及
+ * 追加数据位都直接使用这里的结果，不再重复扫描或转码。
+ * </p>
+ * <p>
+ * 代理对的字节都记在高位代理上，低位代理的字节数为 0。启用 HANZI 模式时，{@link HanziTable} 中的字符
+ * 归为 {@link #HANZI}，与字符编码无关。GS1 内容中的分隔符 GS 归为 {@link #ALPHANUMERIC}，在该模式中写为 '%'，
+ * 而 '%' 本身写为 "%%"，见 {@link #getAlphanumericLength(int, int)}。
+ * </p>
+ * <p>
+ * ISO-8859-1 与 UTF-8 直接由字符计算字节，其他字符编码使用复用的 {@link CharsetEncoder}。
+ * 对象可以重复使用（{@link #reset}），字节、字符类别等数组按见过的最长内容分配，之后不再分配。
+ * </p>
+ */
+final class ContentAnalysis {
+
+  /** 数字，可用 NUMERIC、ALPHANUMERIC、BYTE 模式 */
+  static final byte NUMERIC = 0;
+  /** 数字以外的字母数字字符，可用 ALPHANUMERIC、BYTE 模式 */
+  static final byte ALPHANUMERIC = 1;
+  /** Shift_JIS 中的双字节汉字，可用 KANJI、BYTE 模式 */
+  static final byte KANJI = 2;
+  /** 其他字符，只能用 BYTE 模式 */
+  static final byte BYTE = 3;
+  /** GB2312 中的汉字和符号，可用 HANZI、BYTE 模式；只在启用 HANZI 模式时使用 */
+  static final byte HANZI = 4;
+
+  private CharSequence content;
+  private CharacterEncoding encoding;
+  private boolean hanzi;
+  private boolean gs1;
+  private int length;
+  private byte[] charClasses = new byte[0];
+  // byteOffsets[i] 为第 i 个字符的第一个字节在 bytes 中的位置，byteOffsets[length] 为总字节数
+  private int[] byteOffsets = new int[1];
+  private byte[] bytes = new byte[0];
+  private ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+  private int numBytes;
+  private boolean hasNumeric;
+  private boolean hasAlphanumeric;
+  private boolean hasByte;
+  // 每个字符都是首字节在 0x81-0x9F 或 0xE0-0xEB 的双字节 Shift_JIS 字符
+  private boolean onlyDoubleByteKanji;
+  private boolean hasHanzi;
+  // 每个字符都是 HANZI 类
+  private boolean onlyHanzi;
+  // 上一次使用的编码器，字符编码相同时复用
+  private CharacterEncoding encoderEncoding;
+  private CharsetEncoder encoder;
+
+  /**
+   * 创建一个可重复使用的分析结果，数组按见过的最长内容分配
+   */
+  ContentAnalysis() {
+  }
+
+  /**
+   * @return hints 中的 {@link EncodeHintType#HANZI_MODE}，未指定时字符编码为 GB2312、GBK 或 GB18030 才使用；
+   *   Shift_JIS 始终不使用
+   */
+  static boolean useHanzi(CharacterEncoding encoding, Map<EncodeHintType,?> hints) {
+    if (encoding.isShiftJis()) {
+      return false;
+    }
+    Object hanziMode = hints == null ? null : hints.get(EncodeHintType.HANZI_MODE);
+    if (hanziMode == null) {
+      return encoding.isChinese();
+    }
+    return hanziMode instanceof Boolean ? (Boolean) hanziMode : Boolean.parseBoolean(hanziMode.toString());
+  }
+
+  /**
+   * @return hints 中的 {@link EncodeHintType#GS1_FORMAT}
+   */
+  static boolean useGS1(Map<EncodeHintType,?> hints) {
+    Object gs1Format = hints == null ? null : hints.get(EncodeHintType.GS1_FORMAT);
+    if (gs1Format == null) {
+      return false;
+    }
+    return gs1Format instanceof Boolean ? (Boolean) gs1Format : Boolean.parseBoolean(gs1Format.toString());
+  }
+
+  /**
+   * 扫描并转码 content，覆盖上一次的结果；按字符编码的默认值决定是否使用 HANZI 模式
+   */
+  void reset(CharSequence content, CharacterEncoding encoding) {
+    reset(content, encoding, useHanzi(encoding, null));
+  }
+
+  /**
+   * 扫描并转码 content，覆盖上一次的结果
+   *
+   * @param hanzi 是否把 GB2312 中的字符归为 {@link #HANZI}
+   */
+  void reset(CharSequence content, CharacterEncoding encoding, boolean hanzi) {
+    reset(content, encoding, hanzi, false);
+  }
+
+  /**
+   * 扫描并转码 content，覆盖上一次的结果
+   *
+   * @param hanzi 是否把 GB2312 中的字符归为 {@link #HANZI}
+   * @param gs1 content 是否为 GS1 元素串，其中的 {@link GS1Element#GROUP_SEPARATOR} 表示 FNC1
+   */
+  void reset(CharSequence content, CharacterEncoding encoding, boolean hanzi, boolean gs1) {
+    this.content = content;
+    this.encoding = encoding;
+    this.hanzi = hanzi && !encoding.isShiftJis();
+    this.gs1 = gs1;
+    length = content.length();
+    if (charClasses.length < length) {
+      charClasses = new byte[length];
+      byteOffsets = new int[length + 1];
+    }
+    hasNumeric = false;
+    hasAlphanumeric = false;
+    hasByte = false;
+    onlyDoubleByteKanji = false;
+    hasHanzi = false;
+    onlyHanzi = true;
+    switch (encoding.getKind()) {
+      case CharacterEncoding.LATIN1:
+        if (analyzeLatin1()) {
+          return;
+        }
+        break;
+      case CharacterEncoding.UTF8:
+        analyzeUtf8();
+        return;
+      default:
+        break;
+    }
+    analyzeWithEncoder();
+  }
+
+  CharSequence getContent() {
+    return content;
+  }
+
+  CharacterEncoding getEncoding() {
+    return encoding;
+  }
+
+  int length() {
+    return length;
+  }
+
+  /**
+   * @return 第 i 个字符的类别：{@link #NUMERIC}、{@link #ALPHANUMERIC}、{@link #KANJI}、{@link #BYTE}
+   *   或 {@link #HANZI}
+   */
+  byte getCharClass(int i) {
+    return charClasses[i];
+  }
+
+  /**
+   * @return 转码后的字节，前 {@link #getNumBytes()} 个有效，调用者不得修改
+   */
+  byte[] getBytes() {
+    return bytes;
+  }
+
+  int getNumBytes() {
+    return numBytes;
+  }
+
+  /**
+   * @return 第 i 个字符的第一个字节的位置；i 等于字符数时为总字节数
+   */
+  int getByteOffset(int i) {
+    return byteOffsets[i];
+  }
+
+  boolean hasNumeric() {
+    return hasNumeric;
+  }
+
+  boolean hasAlphanumeric() {
+    return hasAlphanumeric;
+  }
+
+  boolean hasHanzi() {
+    return hasHanzi;
+  }
+
+  boolean isGS1() {
+    return gs1;
+  }
+
+  /**
+   * @return [start, end) 的字符以 ALPHANUMERIC 模式编码时的字符数：GS1 内容中的 '%' 写为 "%%"，占两个字符
+   */
+  int getAlphanumericLength(int start, int end) {
+    int numLetters = end - start;
+    if (gs1) {
+      for (int i = start; i < end; i++) {
+        if (content.charAt(i) == '%') {
+          numLetters++;
+        }
+      }
+    }
+    return numLetters;
+  }
+
+  /**
+   * @return 单一模式编码时的模式：Shift_JIS 且所有字符都是双字节汉字时为 {@link Mode#KANJI}；启用 HANZI 模式且
+   *   所有字符都是 {@link #HANZI} 类时为 {@link Mode#HANZI}；否则按是否含有 BYTE、字母数字字符选择
+   *   BYTE、ALPHANUMERIC 或 NUMERIC
+   */
+  Mode getMode() {
+    if (encoding.isShiftJis()) {
+      // 如果所有字符都是双字节编码，则选择Kanji
+      return onlyDoubleByteKanji ? Mode.KANJI : Mode.BYTE;
+    }
+    if (hasHanzi && onlyHanzi) {
+      return Mode.HANZI;
+    }
+    if (hasByte) {
+      return Mode.BYTE;
+    }
+    if (hasAlphanumeric) {
+      return Mode.ALPHANUMERIC;
+    }
+    if (hasNumeric) {
+      return Mode.NUMERIC;
+    }
+    return Mode.BYTE;
+  }
+
+  /**
+   * ISO-8859-1 且所有字符都不超过 0xFF 时字符值就是字节值
+   *
+   * @return 是否完成；有超出范围的字符时返回 false，由 {@link #analyzeWithEncoder()} 重新处理
+   */
+  private boolean analyzeLatin1() {
+    ensureByteCapacity(length);
+    byte[] latin1 = bytes;
+    for (int i = 0; i < length; i++) {
+      char c = content.charAt(i);
+      if (c > 0xFF) {
+        hasNumeric = false;
+        hasAlphanumeric = false;
+        hasByte = false;
+        hasHanzi = false;
+        onlyHanzi = true;
+        return false;
+      }
+      latin1[i] = (byte) c;
+      classify(i, c);
+      byteOffsets[i] = i;
+    }
+    byteOffsets[length] = length;
+    numBytes = length;
+    return true;
+  }
+
+  /**
+   * 按 UTF-8 规则直接写出各字符的字节，不经过编码器；不成对的代理与 getBytes("UTF-8") 一样替换为 '?'
+   */
+  private void analyzeUtf8() {
+    ensureByteCapacity(length * 3);
+    byte[] utf8 = bytes;
+    int position = 0;
+    int i = 0;
+    while (i < length) {
+      char c = content.charAt(i);
+      byteOffsets[i] = position;
+      classify(i, c);
+      if (c < 0x80) {
+        utf8[position++] = (byte) c;
+      } else if (c < 0x800) {
+        utf8[position++] = (byte) (0xC0 | (c >> 6));
+        utf8[position++] = (byte) (0x80 | (c & 0x3F));
+      } else if (!Character.isSurrogate(c)) {
+        utf8[position++] = (byte) (0xE0 | (c >> 12));
+        utf8[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        utf8[position++] = (byte) (0x80 | (c & 0x3F));
+      } else if (i + 1 < length && Character.isSurrogatePair(c, content.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, content.charAt(i + 1));
+        utf8[position++] = (byte) (0xF0 | (codePoint >> 18));
+        utf8[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        utf8[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        utf8[position++] = (byte) (0x80 | (codePoint & 0x3F));
+        i++;
+        byteOffsets[i] = position;
+        charClasses[i] = BYTE;
+      } else {
+        utf8[position++] = '?';
+      }
+      i++;
+    }
+    numBytes = position;
+    byteOffsets[length] = position;
+  }
+
+  private void analyzeWithEncoder() {
+    if (encoderEncoding != encoding) {
+      encoder = encoding.newEncoder();
+      encoderEncoding = encoding;
+    } else {
+      encoder.reset();
+    }
+    boolean shiftJis = encoding.isShiftJis();
+    onlyDoubleByteKanji = true;
+    ensureByteCapacity((int) Math.ceil(encoder.maxBytesPerChar() * (length + 1)) + 16);
+    ByteBuffer out = byteBuffer;
+    out.clear();
+    CharBuffer in = CharBuffer.wrap(content);
+    int i = 0;
+    while (i < length) {
+      char c = content.charAt(i);
+      int charCount = i + 1 < length && Character.isSurrogatePair(c, content.charAt(i + 1)) ? 2 : 1;
+      int start = out.position();
+      byteOffsets[i] = start;
+      in.limit(i + charCount);
+      if (charCount == 1 && Character.isSurrogate(c)) {
+        // 不成对的代理，与 getBytes(encoding) 一样替换；不交给编码器，以免它等待下一个字符
+        out.put(encoder.replacement());
+        in.position(i + 1);
+      } else {
+        // 逐个字符送入同一个编码器，转码的结果与整体 getBytes(encoding) 相同
+        encoder.encode(in, out, false);
+      }
+      int end = out.position();
+      classify(i, c);
+      if (shiftJis) {
+        boolean doubleByteKanji = end - start == 2 && isKanjiLeadByte(out.get(start) & 0xFF);
+        onlyDoubleByteKanji &= doubleByteKanji;
+        if (doubleByteKanji && isKanji(((out.get(start) & 0xFF) << 8) | (out.get(start + 1) & 0xFF))) {
+          charClasses[i] = KANJI;
+        }
+      }
+      if (charCount == 2) {
+        byteOffsets[i + 1] = end;
+        charClasses[i + 1] = BYTE;
+      }
+      i += charCount;
+    }
+    // 结束输入（内容为空或以不成对的代理结尾时上面没有传入 endOfInput）
+    in.limit(length);
+    encoder.encode(in, out, true);
+    encoder.flush(out);
+    numBytes = out.position();
+    byteOffsets[length] = numBytes;
+  }
+
+  private void ensureByteCapacity(int capacity) {
+    if (bytes.length < capacity) {
+      bytes = new byte[capacity];
+      byteBuffer = ByteBuffer.wrap(bytes);
+    }
+  }
+
+  private void classify(int i, char c) {
+    if (c >= '0' && c <= '9') {
+      charClasses[i] = NUMERIC;
+      hasNumeric = true;
+    } else if (QREncoder.getAlphanumericCode(c) != -1 || (gs1 && c == GS1Element.GROUP_SEPARATOR)) {
+      charClasses[i] = ALPHANUMERIC;
+      hasAlphanumeric = true;
+    } else if (hanzi && HanziTable.isHanzi(c)) {
+      charClasses[i] = HANZI;
+      hasByte = true;
+      hasHanzi = true;
+    } else {
+      charClasses[i] = BYTE;
+      hasByte = true;
+    }
+    onlyHanzi &= charClasses[i] == HANZI;
+  }
+
+  private static boolean isKanjiLeadByte(int byte1) {
+    return (byte1 >= 0x81 && byte1 <= 0x9F) || (byte1 >= 0xE0 && byte1 <= 0xEB);
+  }
+
+  /**
+   * @return 双字节 Shift_JIS 码 code 是否在 KANJI 模式的范围内
+   */
+  static boolean isKanji(int code) {
+    return (code >= 0x8140 && code <= 0x9ffc) || (code >= 0xe040 && code <= 0xebbf);
+  }
+
+}
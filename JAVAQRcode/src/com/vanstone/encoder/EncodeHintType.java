@@ -70,4 +70,45 @@ public enum EncodeHintType {
 	   */
 	   AZTEC_LAYERS,
 
+	  /**
+	   * 用于单个二维码内部并行计算的线程池（类型 {@link java.util.concurrent.ExecutorService}，
+	   * 例如 {@link java.util.concurrent.ForkJoinPool}）。设置后，8 个掩码候选各自在独立的工作区中评估，
+	   * 各 Reed-Solomon 块也并发计算。未设置时始终顺序执行。
+	   */
+	  PARALLEL_EXECUTOR,
+
+	  /**
+	   * 启用并行计算的最小版本（类型 {@link Integer}，默认 25）。小于该版本的二维码即使设置了
+	   * {@link #PARALLEL_EXECUTOR} 也顺序执行，因为任务调度的开销超过了计算本身。
+	   */
+	  PARALLEL_MIN_VERSION,
+
+	  /**
+	   * 掩码选择策略（类型 {@link MaskSelectionStrategy}，默认 {@link MaskSelectionStrategy#FULL}）。
+	   * 用于在吞吐量和符号质量之间取舍，例如只在屏幕上短暂显示的二维码可以使用
+	   * {@link MaskSelectionStrategy#FAST}。
+	   */
+	  MASK_SELECTION,
+
+	  /**
+	   * 指定使用的掩码（类型 {@link Integer}，0 到 7），相当于 {@link MaskSelectionStrategy#fixed(int)}。
+	   * 同时设置了 {@link #MASK_SELECTION} 时以后者为准。Micro QR 只有 4 个掩码，为 0 到 3。
+	   */
+	  MASK_PATTERN,
+
+	  /**
+	   * 是否使用 HANZI 模式（GB/T 18284，类型 {@link Boolean}）编码 GB2312 中的汉字和符号，每个字符 13 位。
+	   * 字符编码为 GB2312、GBK 或 GB18030 时默认使用，其他字符编码（例如 UTF-8）默认不使用；
+	   * 并非所有扫描器都支持该模式。
+	   */
+	  HANZI_MODE,
+
+	  /**
+	   * 内容是否为 GS1 元素串（类型 {@link Boolean}，默认 false）。内容中的 AI 与数据直接相连，可变长度的元素之后
+	   * 用 {@link GS1Element#GROUP_SEPARATOR} 分隔；编码时以 FNC1（第一位置）开始，并按混合模式分段，
+	   * 分隔符在 ALPHANUMERIC 段中写为 '%'。此时忽略 {@link #CHARACTER_SET}，不能用于 Structured Append。
+	   * 已经解析好的 AI 可以直接使用 {@link QREncoder#encodeGS1}。
+	   */
+	  GS1_FORMAT,
+
 }
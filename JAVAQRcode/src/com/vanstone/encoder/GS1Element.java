@@ -0,0 +1,110 @@
+package com.vanstone.encoder;
+
+/**
+ * GS1 元素串中的一个元素：应用标识符（AI）及其数据，用于 {@link QREncoder#encodeGS1}。
+ * <p>
+ * 标签数据通常已经按 AI 解析好，直接传入元素列表即可，不需要先拼接成带 GS 分隔符的字符串。
+ * 预定义长度的 AI（00、01、11-19、20、31-36、41 等开头，见 GS1 通用规范 7.8.5）后面不需要分隔符，
+ * 其数据长度在这里检查；其他 AI 之后、下一个元素之前自动插入 {@link #GROUP_SEPARATOR}。
+ * </p>
+ * <p>
+ * 数据只能使用 GS1 的 82 字符集（字母、数字及 {@code !"%&'()*+,-./:;<=>?_}）。
+ * </p>
+ */
+public final class GS1Element {
+
+  /** 可变长度元素之后的分隔符 GS（0x1D），编码时即 FNC1；ALPHANUMERIC 模式中写为 '%' */
+  public static final char GROUP_SEPARATOR = '\u001D';
+
+  // AI 前两位数字对应的元素总长度（AI 加数据），0 表示可变长度
+  private static final int[] PREDEFINED_LENGTHS = new int[100];
+
+  static {
+    PREDEFINED_LENGTHS[0] = 20;
+    PREDEFINED_LENGTHS[1] = 16;
+    PREDEFINED_LENGTHS[2] = 16;
+    PREDEFINED_LENGTHS[3] = 16;
+    PREDEFINED_LENGTHS[4] = 18;
+    for (int prefix = 11; prefix <= 19; prefix++) {
+      PREDEFINED_LENGTHS[prefix] = 8;
+    }
+    PREDEFINED_LENGTHS[20] = 4;
+    for (int prefix = 31; prefix <= 36; prefix++) {
+      PREDEFINED_LENGTHS[prefix] = 10;
+    }
+    PREDEFINED_LENGTHS[41] = 16;
+  }
+
+  private final String applicationIdentifier;
+  private final CharSequence value;
+
+  /**
+   * @param applicationIdentifier 2 到 4 位数字的 AI
+   * @param value AI 的数据
+   * @throws IllegalArgumentException 如果 AI 不是 2 到 4 位数字、数据为空或含有 82 字符集以外的字符，
+   *   或者预定义长度的 AI 数据长度不符
+   */
+  public GS1Element(String applicationIdentifier, CharSequence value) {
+    int aiLength = applicationIdentifier.length();
+    if (aiLength < 2 || aiLength > 4) {
+      throw new IllegalArgumentException("Invalid application identifier: " + applicationIdentifier);
+    }
+    for (int i = 0; i < aiLength; i++) {
+      char c = applicationIdentifier.charAt(i);
+      if (c < '0' || c > '9') {
+        throw new IllegalArgumentException("Invalid application identifier: " + applicationIdentifier);
+      }
+    }
+    int length = value.length();
+    if (length == 0) {
+      throw new IllegalArgumentException("Empty value for AI " + applicationIdentifier);
+    }
+    for (int i = 0; i < length; i++) {
+      if (!isValidCharacter(value.charAt(i))) {
+        throw new IllegalArgumentException("Invalid character in AI " + applicationIdentifier + ": " + value);
+      }
+    }
+    int predefinedLength = predefinedLength(applicationIdentifier);
+    if (predefinedLength != 0 && aiLength + length != predefinedLength) {
+      throw new IllegalArgumentException("AI " + applicationIdentifier + " requires "
+          + (predefinedLength - aiLength) + " characters: " + value);
+    }
+    this.applicationIdentifier = applicationIdentifier;
+    this.value = value;
+  }
+
+  public String getApplicationIdentifier() {
+    return applicationIdentifier;
+  }
+
+  public CharSequence getValue() {
+    return value;
+  }
+
+  /**
+   * @return AI 是否为预定义长度，此时之后不需要分隔符
+   */
+  public boolean isPredefinedLength() {
+    return predefinedLength(applicationIdentifier) != 0;
+  }
+
+  @Override
+  public String toString() {
+    return "(" + applicationIdentifier + ")" + value;
+  }
+
+  private static int predefinedLength(String applicationIdentifier) {
+    return PREDEFINED_LENGTHS[(applicationIdentifier.charAt(0) - '0') * 10 + applicationIdentifier.charAt(1) - '0'];
+  }
+
+  /**
+   * @return c 是否属于 GS1 的 82 字符集
+   */
+  static boolean isValidCharacter(char c) {
+    if ((c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
+      return true;
+    }
+    return c == '_' || (c >= '!' && c <= '/' && c != '#' && c != '$') || (c >= ':' && c <= '?');
+  }
+
+}
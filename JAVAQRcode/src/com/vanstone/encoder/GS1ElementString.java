@@ -0,0 +1,88 @@
+package com.vanstone.encoder;
+
+import java.util.List;
+
+/**
+ * 把 {@link GS1Element} 列表看作一个字符序列：依次为各元素的 AI 和数据，可变长度的元素之后
+ * （最后一个元素除外）是 {@link GS1Element#GROUP_SEPARATOR}。
+ * <p>
+ * 不复制各元素的数据，只记录每个元素在序列中的起始位置。编码时按顺序读取字符，
+ * 因此 {@link #charAt} 从上一次的元素开始查找，顺序读取时每个字符为常数时间。不是线程安全的。
+ * </p>
+ */
+final class GS1ElementString implements CharSequence {
+
+  private final GS1Element[] elements;
+  // starts[i] 为第 i 个元素的 AI 在序列中的位置，starts[elements.length] 为序列长度
+  private final int[] starts;
+  private int current;
+
+  GS1ElementString(List<GS1Element> elements) {
+    if (elements.isEmpty()) {
+      throw new IllegalArgumentException("No GS1 elements");
+    }
+    this.elements = elements.toArray(new GS1Element[elements.size()]);
+    this.starts = new int[this.elements.length + 1];
+    int position = 0;
+    for (int i = 0; i < this.elements.length; i++) {
+      GS1Element element = this.elements[i];
+      starts[i] = position;
+      position += element.getApplicationIdentifier().length() + element.getValue().length();
+      if (needsSeparator(i)) {
+        position++;
+      }
+    }
+    starts[this.elements.length] = position;
+  }
+
+  @Override
+  public int length() {
+    return starts[elements.length];
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= length()) {
+      throw new IndexOutOfBoundsException("index: " + index);
+    }
+    int i = current;
+    if (index < starts[i]) {
+      i = 0;
+    }
+    while (index >= starts[i + 1]) {
+      i++;
+    }
+    current = i;
+    GS1Element element = elements[i];
+    int offset = index - starts[i];
+    String applicationIdentifier = element.getApplicationIdentifier();
+    if (offset < applicationIdentifier.length()) {
+      return applicationIdentifier.charAt(offset);
+    }
+    offset -= applicationIdentifier.length();
+    CharSequence value = element.getValue();
+    return offset < value.length() ? value.charAt(offset) : GS1Element.GROUP_SEPARATOR;
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return toString().substring(start, end);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder(length());
+    for (int i = 0; i < elements.length; i++) {
+      result.append(elements[i].getApplicationIdentifier()).append(elements[i].getValue());
+      if (needsSeparator(i)) {
+        result.append(GS1Element.GROUP_SEPARATOR);
+      }
+    }
+    return result.toString();
+  }
+
+  private boolean needsSeparator(int i) {
+    return i < elements.length - 1 && !elements[i].isPredefinedLength();
+  }
+
+}
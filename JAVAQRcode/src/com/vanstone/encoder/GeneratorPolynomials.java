@@ -0,0 +1,91 @@
+package com.vanstone.encoder;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reed-Solomon 生成多项式的共享注册表。
+ * <p>
+ * 第 n 项为 g(x) = (x - a^b)(x - a^(b+1))...(x - a^(b+n-1))。已经建立的多项式保存在一个不可变数组中，
+ * 需要更高次数时复制扩展后用 CAS 替换整个数组，读取不加锁，因此可以被任意多个线程同时使用。
+ * 并发扩展时可能重复计算，但结果相同，只会保留其中一份。
+ * </p>
+ * <p>
+ * {@link #QR_CODE} 在类加载时就建立了二维码使用的全部次数（1 到 {@link QRReedSolomon#MAX_EC_BYTES}），
+ * 同时保存了系数的对数形式，供 {@link QRReedSolomon} 的查表计算使用。
+ * </p>
+ */
+final class GeneratorPolynomials {
+
+  static final GeneratorPolynomials QR_CODE =
+      new GeneratorPolynomials(GenericGF.QR_CODE_FIELD_256, QRReedSolomon.MAX_EC_BYTES);
+
+  private final GenericGF field;
+  private final AtomicReference<GenericGFPoly[]> generators;
+  // logCoefficients[n][j] 为 n 次生成多项式中 x^(n-1-j) 项系数的对数（省略首项 1）
+  private final int[][] logCoefficients;
+
+  private GeneratorPolynomials(GenericGF field, int precomputedDegree) {
+    this.field = field;
+    GenericGFPoly[] initial = extend(new GenericGFPoly[] {new GenericGFPoly(field, new int[] {1})},
+        precomputedDegree);
+    this.generators = new AtomicReference<>(initial);
+    this.logCoefficients = new int[precomputedDegree + 1][];
+    for (int degree = 1; degree <= precomputedDegree; degree++) {
+      int[] coefficients = initial[degree].getCoefficients();
+      int[] logs = new int[degree];
+      for (int j = 0; j < degree; j++) {
+        logs[j] = field.log(coefficients[j + 1]);
+      }
+      logCoefficients[degree] = logs;
+    }
+  }
+
+  /**
+   * @return 该域使用的注册表；二维码域返回共享的 {@link #QR_CODE}，其他域返回一个新的、按需扩展的注册表
+   */
+  static GeneratorPolynomials forField(GenericGF field) {
+    if (field == GenericGF.QR_CODE_FIELD_256) {
+      return QR_CODE;
+    }
+    return new GeneratorPolynomials(field, 0);
+  }
+
+  /**
+   * @return degree 次生成多项式
+   */
+  GenericGFPoly get(int degree) {
+    GenericGFPoly[] current = generators.get();
+    while (degree >= current.length) {
+      GenericGFPoly[] grown = extend(current, degree);
+      if (generators.compareAndSet(current, grown)) {
+        current = grown;
+      } else {
+        current = generators.get();
+      }
+    }
+    return current[degree];
+  }
+
+  /**
+   * @return degree 次生成多项式除首项外各系数的对数，只对类加载时建立的次数有效，调用者不得修改
+   */
+  int[] getLogCoefficients(int degree) {
+    return logCoefficients[degree];
+  }
+
+  private GenericGFPoly[] extend(GenericGFPoly[] current, int degree) {
+    if (degree < current.length) {
+      return current;
+    }
+    GenericGFPoly[] grown = new GenericGFPoly[degree + 1];
+    System.arraycopy(current, 0, grown, 0, current.length);
+    GenericGFPoly lastGenerator = current[current.length - 1];
+    for (int d = current.length; d <= degree; d++) {
+      lastGenerator = lastGenerator.multiply(
+          new GenericGFPoly(field, new int[] {1, field.exp(d - 1 + field.getGeneratorBase())}));
+      grown[d] = lastGenerator;
+    }
+    return grown;
+  }
+
+}
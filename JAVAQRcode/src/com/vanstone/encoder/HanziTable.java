@@ -0,0 +1,80 @@
+package com.vanstone.encoder;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * HANZI 模式（GB/T 18284-2000）的字符表：Unicode 字符到 13 位编码值的映射。
+ * <p>
+ * HANZI 模式可以编码 GB2312 中首字节为 0xA1-0xAA（符号）或 0xB0-0xFA（汉字）、次字节为 0xA1-0xFE
+ * 的双字节字符。前者减去 0xA1A1、后者减去 0xA6A1，再把高字节乘以 0x60 加上低字节，得到 13 位的值。
+ * 表在第一次使用本类时由 GB2312 解码器构建一次（约 7000 个字符，128 KB），之后按字符直接查表，
+ * 与内容使用的字符编码无关。运行环境不支持 GB2312 时表为空，不使用 HANZI 模式。
+ * </p>
+ */
+final class HanziTable {
+
+  /** GB/T 18284 中 GB2312 的子集指示符 */
+  static final int GB2312_SUBSET = 1;
+
+  // VALUES[c] 为字符 c 的编码值加一，0 表示不能用 HANZI 模式
+  private static final char[] VALUES = new char[Character.MAX_VALUE + 1];
+
+  static {
+    CharsetDecoder decoder;
+    try {
+      decoder = Charset.forName("GB2312").newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT);
+    } catch (UnsupportedCharsetException uce) {
+      decoder = null;
+    }
+    if (decoder != null) {
+      byte[] pair = new byte[2];
+      ByteBuffer in = ByteBuffer.wrap(pair);
+      CharBuffer out = CharBuffer.allocate(2);
+      for (int byte1 = 0xA1; byte1 <= 0xFA; byte1++) {
+        if (byte1 > 0xAA && byte1 < 0xB0) {
+          continue;
+        }
+        int subtrahend = byte1 <= 0xAA ? 0xA1A1 : 0xA6A1;
+        for (int byte2 = 0xA1; byte2 <= 0xFE; byte2++) {
+          pair[0] = (byte) byte1;
+          pair[1] = (byte) byte2;
+          in.clear();
+          out.clear();
+          decoder.reset();
+          if (decoder.decode(in, out, true).isError() || decoder.flush(out).isError() || out.position() != 1) {
+            continue;
+          }
+          int subtracted = ((byte1 << 8) | byte2) - subtrahend;
+          int value = (subtracted >> 8) * 0x60 + (subtracted & 0xFF);
+          char c = out.get(0);
+          // 同一个字符只取第一个编码
+          if (VALUES[c] == 0) {
+            VALUES[c] = (char) (value + 1);
+          }
+        }
+      }
+    }
+  }
+
+  private HanziTable() {
+  }
+
+  /**
+   * @return 字符 c 在 HANZI 模式中的 13 位编码值，不能用 HANZI 模式时为 -1
+   */
+  static int getValue(char c) {
+    return VALUES[c] - 1;
+  }
+
+  static boolean isHanzi(char c) {
+    return VALUES[c] != 0;
+  }
+
+}
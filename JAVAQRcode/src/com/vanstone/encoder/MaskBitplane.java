@@ -0,0 +1,97 @@
+package com.vanstone.encoder;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 某个版本、某个掩码的掩码位平面。
+ * <p>
+ * 只在数据模块上、且 {@link MaskUtil#getDataMaskBit(int, int, int)} 为真的位置置 1，功能图形全为 0，
+ * 因此加掩码就是与位平面按字异或，不再对每个模块做取模运算。位平面按行压缩（第 x 列位于第 x / 64
+ * 个字的第 x % 64 位），同时保存转置后的各列，与 {@link BitPackedMaskPenalty} 的布局相同。
+ * </p>
+ * <p>
+ * 各位平面在第一次使用时构建，之后只读，可被多个线程共享；并发首次使用时可能重复构建，
+ * 但只会保留其中一份。全部 40 个版本、8 个掩码都建立后约占 1.2 MB。
+ * </p>
+ */
+final class MaskBitplane {
+
+  private static final AtomicReferenceArray<MaskBitplane> PLANES =
+      new AtomicReferenceArray<>(40 * QRCode.NUM_MASK_PATTERNS);
+
+  private final int dimension;
+  private final int wordsPerRow;
+  private final long[] rows;
+  private final long[] columns;
+
+  private MaskBitplane(VersionTemplate template, int maskPattern) {
+    dimension = template.getDimension();
+    wordsPerRow = template.getWordsPerRow();
+    rows = new long[dimension * wordsPerRow];
+    columns = new long[dimension * wordsPerRow];
+    for (int module : template.getDataModules()) {
+      int x = module & 0xFF;
+      int y = module >>> 8;
+      if (MaskUtil.getDataMaskBit(maskPattern, x, y)) {
+        rows[y * wordsPerRow + (x >>> 6)] |= 1L << (x & 0x3F);
+        columns[x * wordsPerRow + (y >>> 6)] |= 1L << (y & 0x3F);
+      }
+    }
+  }
+
+  /**
+   * @return 该版本、该掩码的位平面，第一次使用时构建
+   */
+  static MaskBitplane forVersion(Version version, int maskPattern) throws WriterException {
+    if (!QRCode.isValidMaskPattern(maskPattern)) {
+      throw new WriterException("Invalid mask pattern");
+    }
+    int index = (version.getVersionNumber() - 1) * QRCode.NUM_MASK_PATTERNS + maskPattern;
+    MaskBitplane plane = PLANES.get(index);
+    if (plane == null) {
+      plane = new MaskBitplane(VersionTemplate.forVersion(version), maskPattern);
+      if (!PLANES.compareAndSet(index, null, plane)) {
+        plane = PLANES.get(index);
+      }
+    }
+    return plane;
+  }
+
+  int getDimension() {
+    return dimension;
+  }
+
+  /**
+   * @return 按行压缩的位平面，调用者不得修改
+   */
+  long[] getRows() {
+    return rows;
+  }
+
+  /**
+   * @return 转置后按列压缩的位平面，调用者不得修改
+   */
+  long[] getColumns() {
+    return columns;
+  }
+
+  /**
+   * 对 matrix 的数据模块加掩码；再调用一次即还原
+   */
+  void applyTo(ByteMatrix matrix) {
+    byte[][] array = matrix.getArray();
+    for (int y = 0; y < dimension; y++) {
+      byte[] arrayY = array[y];
+      int offset = y * wordsPerRow;
+      for (int i = 0; i < wordsPerRow; i++) {
+        long word = rows[offset + i];
+        while (word != 0) {
+          int x = (i << 6) + Long.numberOfTrailingZeros(word);
+          arrayY[x] ^= 1;
+          word &= word - 1;
+        }
+      }
+    }
+  }
+
+}
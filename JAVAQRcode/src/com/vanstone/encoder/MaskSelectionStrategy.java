@@ -0,0 +1,81 @@
+package com.vanstone.encoder;
+
+/**
+ * 掩码选择策略，通过 {@link EncodeHintType#MASK_SELECTION} 指定，未指定时为 {@link #FULL}。
+ * <p>
+ * 各策略在速度与掩码质量之间取舍：
+ * </p>
+ * <ul>
+ *   <li>{@link #FULL}：8 个掩码都按 4 条规则计算惩罚，取最小者（标准做法）；</li>
+ *   <li>{@link #fixed(int)}：直接使用指定的掩码，不计算惩罚；</li>
+ *   <li>{@link #SAMPLED}：规则1、2、3 只在每 {@link #SAMPLE_STEP} 行、列中的一行、一列上计算，
+ *   这些行、列均匀分布在整个符号上，规则4 仍统计全部模块；</li>
+ *   <li>{@link #FAST}：只用规则1、2、4，省去代价最高的规则3。</li>
+ * </ul>
+ * <p>
+ * 选择的策略和对应的惩罚记录在 {@link QRCode#getMaskSelectionStrategy()}
+ * 和 {@link QRCode#getMaskPenalty()} 中，便于比较各策略的吞吐量和符号质量。
+ * </p>
+ */
+public final class MaskSelectionStrategy {
+
+  /**
+   * 策略类型
+   */
+  public enum Type {
+    FULL,
+    FIXED,
+    SAMPLED,
+    FAST
+  }
+
+  /** {@link #SAMPLED} 的抽样间隔：每 4 行（列）计算一行（列） */
+  public static final int SAMPLE_STEP = 4;
+
+  public static final MaskSelectionStrategy FULL = new MaskSelectionStrategy(Type.FULL, -1);
+  public static final MaskSelectionStrategy SAMPLED = new MaskSelectionStrategy(Type.SAMPLED, -1);
+  public static final MaskSelectionStrategy FAST = new MaskSelectionStrategy(Type.FAST, -1);
+
+  private static final MaskSelectionStrategy[] FIXED = new MaskSelectionStrategy[QRCode.NUM_MASK_PATTERNS];
+  static {
+    for (int maskPattern = 0; maskPattern < FIXED.length; maskPattern++) {
+      FIXED[maskPattern] = new MaskSelectionStrategy(Type.FIXED, maskPattern);
+    }
+  }
+
+  private final Type type;
+  private final int maskPattern;
+
+  private MaskSelectionStrategy(Type type, int maskPattern) {
+    this.type = type;
+    this.maskPattern = maskPattern;
+  }
+
+  /**
+   * @param maskPattern 掩码编号，0 到 7
+   * @return 始终使用该掩码的策略
+   */
+  public static MaskSelectionStrategy fixed(int maskPattern) {
+    if (!QRCode.isValidMaskPattern(maskPattern)) {
+      throw new IllegalArgumentException("Invalid mask pattern: " + maskPattern);
+    }
+    return FIXED[maskPattern];
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * @return {@link Type#FIXED} 时的掩码编号，其他策略为 -1
+   */
+  public int getMaskPattern() {
+    return maskPattern;
+  }
+
+  @Override
+  public String toString() {
+    return type == Type.FIXED ? "FIXED(" + maskPattern + ')' : type.name();
+  }
+
+}
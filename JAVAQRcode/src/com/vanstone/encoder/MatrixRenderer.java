@@ -0,0 +1,135 @@
+package com.vanstone.encoder;
+
+import java.util.Arrays;
+
+/**
+ * 把二维码矩阵的一行模块放大为打包的像素行，{@link ScaledSymbolView}、{@link PngWriter} 等使用。
+ * <p>
+ * 不再为每个黑色模块调用 {@link BitMatrix#setRegion}（逐个像素计算下标并置位），而是每个模块行只生成一次
+ * 放大后的像素行：放大倍数不超过 4 时，每 8 个模块组成一个字节，查表得到放大后的 8 * multiple 位一次写入；
+ * 更大的倍数按连续的黑色模块整段填充，中间的整字直接写 -1。生成位矩阵时像素行写入后
+ * 再用 {@link System#arraycopy} 复制 multiple - 1 次（{@link ScaledSymbolView#toBitMatrix()}）。
+ * </p>
+ * <p>
+ * 输出尺寸、放大倍数和居中的边距由调用者（{@link ScaledSymbolView} 等）计算。实例只保存一行的缓冲区和查找表，不是线程安全的。
+ * </p>
+ */
+final class MatrixRenderer {
+
+  // 查表时一个字节放大后的位数不能超过一个 int
+  private static final int MAX_LOOKUP_MULTIPLE = 4;
+
+  private final int inputWidth;
+  private final int multiple;
+  private final int leftPadding;
+  // lookup[b] 为字节 b 的每一位放大 multiple 倍后的位串，低位在左
+  private final int[] lookup;
+  private final int[] row;
+
+  /**
+   * @param inputWidth 矩阵宽度（模块数）
+   * @param multiple 放大倍数，至少为 1
+   * @param leftPadding 第一个模块左侧的像素数
+   * @param outputWidth 输出的像素宽度
+   */
+  MatrixRenderer(int inputWidth, int multiple, int leftPadding, int outputWidth) {
+    this.inputWidth = inputWidth;
+    this.multiple = multiple;
+    this.leftPadding = leftPadding;
+    this.lookup = multiple <= MAX_LOOKUP_MULTIPLE ? buildLookup(multiple) : null;
+    this.row = new int[(outputWidth + 31) / 32];
+  }
+
+  /**
+   * 生成一个模块行放大后的像素行，第 x 个像素在第 x / 32 个 int 的第 x % 32 位（与 {@link BitMatrix} 相同）
+   *
+   * @param modules 一行模块，1 为黑色
+   * @return 渲染器持有的像素行，下一次调用时被覆盖；整行都是白色时返回 null
+   */
+  int[] renderRow(byte[] modules) {
+    Arrays.fill(row, 0);
+    boolean dark = lookup != null ? renderByLookup(modules) : renderByRuns(modules);
+    return dark ? row : null;
+  }
+
+  private boolean renderByLookup(byte[] modules) {
+    boolean dark = false;
+    int groupBits = 8 * multiple;
+    for (int x = 0, pixel = leftPadding; x < inputWidth; x += 8, pixel += groupBits) {
+      int end = Math.min(x + 8, inputWidth);
+      int b = 0;
+      for (int i = x; i < end; i++) {
+        if (modules[i] == 1) {
+          b |= 1 << (i - x);
+        }
+      }
+      if (b == 0) {
+        continue;
+      }
+      dark = true;
+      int value = lookup[b];
+      int offset = pixel >>> 5;
+      int shift = pixel & 0x1f;
+      row[offset] |= value << shift;
+      if (shift != 0) {
+        // 超出本字的部分只在确有黑色像素时写入，不会越过行尾
+        int high = value >>> (32 - shift);
+        if (high != 0) {
+          row[offset + 1] |= high;
+        }
+      }
+    }
+    return dark;
+  }
+
+  private boolean renderByRuns(byte[] modules) {
+    boolean dark = false;
+    int x = 0;
+    while (x < inputWidth) {
+      if (modules[x] != 1) {
+        x++;
+        continue;
+      }
+      int start = x;
+      while (x < inputWidth && modules[x] == 1) {
+        x++;
+      }
+      fill(leftPadding + start * multiple, leftPadding + x * multiple);
+      dark = true;
+    }
+    return dark;
+  }
+
+  // 置位像素 [from, to)
+  private void fill(int from, int to) {
+    int first = from >>> 5;
+    int last = (to - 1) >>> 5;
+    int firstMask = -1 << (from & 0x1f);
+    int lastMask = -1 >>> (31 - ((to - 1) & 0x1f));
+    if (first == last) {
+      row[first] |= firstMask & lastMask;
+      return;
+    }
+    row[first] |= firstMask;
+    for (int i = first + 1; i < last; i++) {
+      row[i] = -1;
+    }
+    row[last] |= lastMask;
+  }
+
+  private static int[] buildLookup(int multiple) {
+    int[] lookup = new int[256];
+    int moduleBits = (1 << multiple) - 1;
+    for (int b = 1; b < 256; b++) {
+      int value = 0;
+      for (int i = 0; i < 8; i++) {
+        if ((b & (1 << i)) != 0) {
+          value |= moduleBits << (i * multiple);
+        }
+      }
+      lookup[b] = value;
+    }
+    return lookup;
+  }
+
+}
@@ -95,6 +95,16 @@ public final class MatrixUtil {
 		  private static final int TYPE_INFO_POLY = 0x537;
 		  private static final int TYPE_INFO_MASK_PATTERN = 0x5412;
 
+		  // 32 个格式信息字，下标为 (纠错等级的2位 << 3) | 掩码编号，即格式信息的前5位
+		  private static final int[] TYPE_INFO_WORDS = new int[32];
+
+		  static {
+		    for (int typeInfo = 0; typeInfo < TYPE_INFO_WORDS.length; typeInfo++) {
+		      TYPE_INFO_WORDS[typeInfo] =
+		          ((typeInfo << 10) | calculateBCHCode(typeInfo, TYPE_INFO_POLY)) ^ TYPE_INFO_MASK_PATTERN;
+		    }
+		  }
+
 		  // Set all cells to -1.  -1 means that the cell is empty (not set yet).
 		  //
 		  // JAVAPORT: We shouldn't need to do this at all. The code should be rewritten to begin encoding
@@ -105,19 +115,52 @@ public final class MatrixUtil {
 
 		  // Build 2D matrix of QR Code from "dataBits" with "ecLevel", "version" and "getMaskPattern". On
 		  // success, store the result in "matrix" and return true.
-		  static void buildMatrix(BitArray dataBits,
+		  static void buildMatrix(BitWriter dataBits,
 		                          ErrorCorrectionLevel ecLevel,
 		                          Version version,
 		                          int maskPattern,
 		                          ByteMatrix matrix) throws WriterException {
-		    clearMatrix(matrix);
-		    embedBasicPatterns(version, matrix);
+		    // 功能图形和版本信息来自该版本的模板
+		    VersionTemplate template = VersionTemplate.forVersion(version);
+		    template.copyTo(matrix);
 		    // Type information appear with any version.
 		    embedTypeInfo(ecLevel, maskPattern, matrix);
-		    // Version info appear if version >= 7.
-		    maybeEmbedVersionInfo(version, matrix);
 		    // Data should be embedded at end.
-		    embedDataBits(dataBits, maskPattern, matrix);
+		    template.embedDataBits(dataBits, matrix);
+		    MaskBitplane.forVersion(version, maskPattern).applyTo(matrix);
+		  }
+
+		  // Build the matrix without any mask: function patterns, version info and the data bits are in
+		  // place, and the type info cells hold 0. A candidate mask is then applied with applyDataMask()
+		  // and embedTypeInfo(), and removed again by a second applyDataMask().
+		  static void buildUnmaskedMatrix(BitWriter dataBits,
+		                                  Version version,
+		                                  ByteMatrix matrix) throws WriterException {
+		    VersionTemplate template = VersionTemplate.forVersion(version);
+		    template.copyTo(matrix);
+		    template.embedDataBits(dataBits, matrix);
+		  }
+
+		  // XOR "maskPattern" over the data modules of "version", using the cached mask bitplane.
+		  // Applying the same mask twice restores the matrix.
+		  static void applyDataMask(int maskPattern, Version version, ByteMatrix matrix)
+		      throws WriterException {
+		    MaskBitplane.forVersion(version, maskPattern).applyTo(matrix);
+		  }
+
+		  // @return the number of data modules of "version", that is, the codeword bits plus the remainder
+		  // bits. Every module that is not part of a function pattern or the type/version info is counted.
+		  static int getNumDataModules(Version version) {
+		    int versionNumber = version.getVersionNumber();
+		    int result = (16 * versionNumber + 128) * versionNumber + 64;
+		    if (versionNumber >= 2) {
+		      int numAlignmentCoordinates = versionNumber / 7 + 2;
+		      result -= (25 * numAlignmentCoordinates - 10) * numAlignmentCoordinates - 55;
+		      if (versionNumber >= 7) {
+		        result -= 36;
+		      }
+		    }
+		    return result;
 		  }
 
 		  // Embed basic patterns. On success, modify the matrix and return true.
@@ -141,31 +184,34 @@ public final class MatrixUtil {
 		  // Embed type information. On success, modify the matrix.
 		  static void embedTypeInfo(ErrorCorrectionLevel ecLevel, int maskPattern, ByteMatrix matrix)
 		      throws WriterException {
-		    BitArray typeInfoBits = new BitArray();
-		    makeTypeInfoBits(ecLevel, maskPattern, typeInfoBits);
+		    embedTypeInfo(makeTypeInfo(ecLevel, maskPattern), matrix);
+		  }
 
-		    for (int i = 0; i < typeInfoBits.getSize(); ++i) {
-		      // Place bits in LSB to MSB order.  LSB (least significant bit) is the last value in
-		      // "typeInfoBits".
-		      boolean bit = typeInfoBits.get(typeInfoBits.getSize() - 1 - i);
+		  // 放置 makeTypeInfo() 得到的15位格式信息
+		  static void embedTypeInfo(int typeInfo, ByteMatrix matrix) {
+		    for (int i = 0; i < 15; ++i) {
+		      // Place bits in LSB to MSB order.
+		      boolean bit = ((typeInfo >>> i) & 1) != 0;
+		      for (int copy = 0; copy < 2; ++copy) {
+		        int module = getTypeInfoModule(i, copy, matrix.getWidth());
+		        matrix.set(module & 0xFF, module >>> 8, bit);
+		      }
+		    }
+		  }
 
+		  // 第 i 位格式信息的位置，以 (y << 8) | x 表示。copy 为 0 时在左上角，为 1 时在右上角（i < 8）
+		  // 或左下角。
+		  static int getTypeInfoModule(int i, int copy, int dimension) {
+		    if (copy == 0) {
 		      // Type info bits at the left top corner. See 8.9 of JISX0510:2004 (p.46).
-		      int x1 = TYPE_INFO_COORDINATES[i][0];
-		      int y1 = TYPE_INFO_COORDINATES[i][1];
-		      matrix.set(x1, y1, bit);
-
-		      if (i < 8) {
-		        // Right top corner.
-		        int x2 = matrix.getWidth() - i - 1;
-		        int y2 = 8;
-		        matrix.set(x2, y2, bit);
-		      } else {
-		        // Left bottom corner.
-		        int x2 = 8;
-		        int y2 = matrix.getHeight() - 7 + (i - 8);
-		        matrix.set(x2, y2, bit);
-		      }
+		      return (TYPE_INFO_COORDINATES[i][1] << 8) | TYPE_INFO_COORDINATES[i][0];
+		    }
+		    if (i < 8) {
+		      // Right top corner.
+		      return (8 << 8) | (dimension - i - 1);
 		    }
+		    // Left bottom corner.
+		    return ((dimension - 7 + (i - 8)) << 8) | 8;
 		  }
 
 		  // Embed version information if need be. On success, modify the matrix and return true.
@@ -174,15 +220,14 @@ public final class MatrixUtil {
 		    if (version.getVersionNumber() < 7) {  // Version info is necessary if version >= 7.
 		      return;  // Don't need version info.
 		    }
-		    BitArray versionInfoBits = new BitArray();
-		    makeVersionInfoBits(version, versionInfoBits);
+		    int versionInfo = makeVersionInfo(version);
 
-		    int bitIndex = 6 * 3 - 1;  // It will decrease from 17 to 0.
+		    int bitIndex = 0;  // It will increase from 0 to 17.
 		    for (int i = 0; i < 6; ++i) {
 		      for (int j = 0; j < 3; ++j) {
 		        // Place bits in LSB (least significant bit) to MSB order.
-		        boolean bit = versionInfoBits.get(bitIndex);
-		        bitIndex--;
+		        boolean bit = ((versionInfo >>> bitIndex) & 1) != 0;
+		        bitIndex++;
 		        // Left bottom corner.
 		        matrix.set(i, matrix.getHeight() - 11 + j, bit);
 		        // Right bottom corner.
@@ -191,56 +236,6 @@ public final class MatrixUtil {
 		    }
 		  }
 
-		  // Embed "dataBits" using "getMaskPattern". On success, modify the matrix and return true.
-		  // For debugging purposes, it skips masking process if "getMaskPattern" is -1.
-		  // See 8.7 of JISX0510:2004 (p.38) for how to embed data bits.
-		  static void embedDataBits(BitArray dataBits, int maskPattern, ByteMatrix matrix)
-		      throws WriterException {
-		    int bitIndex = 0;
-		    int direction = -1;
-		    // Start from the right bottom cell.
-		    int x = matrix.getWidth() - 1;
-		    int y = matrix.getHeight() - 1;
-		    while (x > 0) {
-		      // Skip the vertical timing pattern.
-		      if (x == 6) {
-		        x -= 1;
-		      }
-		      while (y >= 0 && y < matrix.getHeight()) {
-		        for (int i = 0; i < 2; ++i) {
-		          int xx = x - i;
-		          // Skip the cell if it's not empty.
-		          if (!isEmpty(matrix.get(xx, y))) {
-		            continue;
-		          }
-		          boolean bit;
-		          if (bitIndex < dataBits.getSize()) {
-		            bit = dataBits.get(bitIndex);
-		            ++bitIndex;
-		          } else {
-		            // Padding bit. If there is no bit left, we'll fill the left cells with 0, as described
-		            // in 8.4.9 of JISX0510:2004 (p. 24).
-		            bit = false;
-		          }
-
-		          // Skip masking if mask_pattern is -1.
-		          if (maskPattern != -1 && MaskUtil.getDataMaskBit(maskPattern, xx, y)) {
-		            bit = !bit;
-		          }
-		          matrix.set(xx, y, bit);
-		        }
-		        y += direction;
-		      }
-		      direction = -direction;  // Reverse the direction.
-		      y += direction;
-		      x -= 2;  // Move to the left.
-		    }
-		    // All bits should be consumed.
-		    if (bitIndex != dataBits.getSize()) {
-		      throw new WriterException("Not all bits consumed: " + bitIndex + '/' + dataBits.getSize());
-		    }
-		  }
-
 		  // Return the position of the most significant bit set (to one) in the "value". The most
 		  // significant bit is position 32. If there is no bit set, return 0. Examples:
 		  // - findMSBSet(0) => 0
@@ -296,39 +291,21 @@ public final class MatrixUtil {
 		    return value;
 		  }
 
-		  // Make bit vector of type information. On success, store the result in "bits" and return true.
-		  // Encode error correction level and mask pattern. See 8.9 of
-		  // JISX0510:2004 (p.45) for details.
-		  static void makeTypeInfoBits(ErrorCorrectionLevel ecLevel, int maskPattern, BitArray bits)
-		      throws WriterException {
+		  // Make type information: 5 bits of error correction level and mask pattern, followed by the
+		  // 10-bit BCH code, XORed with the mask pattern 0x5412. See 8.9 of JISX0510:2004 (p.45) for details.
+		  // 以15位整数返回，最高位是第一位。
+		  static int makeTypeInfo(ErrorCorrectionLevel ecLevel, int maskPattern) throws WriterException {
 		    if (!QRCode.isValidMaskPattern(maskPattern)) {
 		      throw new WriterException("Invalid mask pattern");
 		    }
-		    int typeInfo = (ecLevel.getBits() << 3) | maskPattern;
-		    bits.appendBits(typeInfo, 5);
-
-		    int bchCode = calculateBCHCode(typeInfo, TYPE_INFO_POLY);
-		    bits.appendBits(bchCode, 10);
-
-		    BitArray maskBits = new BitArray();
-		    maskBits.appendBits(TYPE_INFO_MASK_PATTERN, 15);
-		    bits.xor(maskBits);
-
-		    if (bits.getSize() != 15) {  // Just in case.
-		      throw new WriterException("should not happen but we got: " + bits.getSize());
-		    }
+		    return TYPE_INFO_WORDS[(ecLevel.getBits() << 3) | maskPattern];
 		  }
 
-		  // Make bit vector of version information. On success, store the result in "bits" and return true.
-		  // See 8.10 of JISX0510:2004 (p.45) for details.
-		  static void makeVersionInfoBits(Version version, BitArray bits) throws WriterException {
-		    bits.appendBits(version.getVersionNumber(), 6);
-		    int bchCode = calculateBCHCode(version.getVersionNumber(), VERSION_INFO_POLY);
-		    bits.appendBits(bchCode, 12);
-
-		    if (bits.getSize() != 18) {  // Just in case.
-		      throw new WriterException("should not happen but we got: " + bits.getSize());
-		    }
+		  // Make version information: 6 bits of version number followed by the 12-bit BCH code.
+		  // See 8.10 of JISX0510:2004 (p.45) for details. 以18位整数返回，最高位是第一位。
+		  static int makeVersionInfo(Version version) {
+		    int versionNumber = version.getVersionNumber();
+		    return (versionNumber << 12) | calculateBCHCode(versionNumber, VERSION_INFO_POLY);
 		  }
 
 		  // Check if "value" is empty.
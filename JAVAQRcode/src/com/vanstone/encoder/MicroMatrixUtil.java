@@ -0,0 +1,158 @@
+package com.vanstone.encoder;
+
+/**
+ * Micro QR 的矩阵构建（ISO 18004:2006 6.3、6.8、6.9）。
+ * <p>
+ * 与 {@link MatrixUtil} 的区别：只有左上角一个位置探测图形及其分隔符，定时图形在第 0 行和第 0 列，
+ * 15 位格式信息只有一份，放在位置探测图形的右侧和下方；数据从右下角开始按两列一组蛇形排列，
+ * 不需要跳过竖直定时图形。掩码只有 4 种，按下边缘和右边缘的黑色模块数评价，而不是 4 条惩罚规则。
+ * </p>
+ */
+final class MicroMatrixUtil {
+
+  private static final int FORMAT_INFO_POLY = 0x537;
+  private static final int FORMAT_INFO_MASK_PATTERN = 0x4445;
+
+  // FORMAT_INFO_WORDS[symbolNumber << 2 | maskPattern]
+  private static final int[] FORMAT_INFO_WORDS = new int[32];
+
+  static {
+    for (int formatInfo = 0; formatInfo < FORMAT_INFO_WORDS.length; formatInfo++) {
+      int bchCode = MatrixUtil.calculateBCHCode(formatInfo, FORMAT_INFO_POLY);
+      FORMAT_INFO_WORDS[formatInfo] = ((formatInfo << 10) | bchCode) ^ FORMAT_INFO_MASK_PATTERN;
+    }
+  }
+
+  private MicroMatrixUtil() {
+  }
+
+  /**
+   * 用 dataBits（数据位后接纠错码字）构建矩阵，maskPattern 为 -1 时不加掩码、格式信息为 0
+   */
+  static void buildMatrix(BitWriter dataBits,
+                          ErrorCorrectionLevel ecLevel,
+                          MicroVersion version,
+                          int maskPattern,
+                          ByteMatrix matrix) throws WriterException {
+    matrix.clear((byte) -1);
+    embedBasicPatterns(matrix);
+    embedFormatInfo(maskPattern == -1 ? 0 : makeFormatInfo(ecLevel, version, maskPattern), matrix);
+    embedDataBits(dataBits, maskPattern, matrix);
+  }
+
+  /**
+   * @return 15 位格式信息：3 位符号编号、2 位掩码和 10 位 BCH 码，再与 0x4445 异或
+   */
+  static int makeFormatInfo(ErrorCorrectionLevel ecLevel, MicroVersion version, int maskPattern)
+      throws WriterException {
+    if (!MicroQRCode.isValidMaskPattern(maskPattern)) {
+      throw new WriterException("Invalid mask pattern");
+    }
+    int symbolNumber = version.getSymbolNumber(ecLevel);
+    if (symbolNumber == -1) {
+      throw new WriterException(version + " does not support " + ecLevel);
+    }
+    return FORMAT_INFO_WORDS[(symbolNumber << 2) | maskPattern];
+  }
+
+  /**
+   * 评价加了 maskPattern 之后的符号（6.8.2）：SUM1、SUM2 分别为右边缘和下边缘（不含定时图形）的黑色模块数，
+   * 分数为较小者乘 16 加较大者，越大越好。边缘上只有数据模块，因此可以直接在不加掩码的矩阵上计算。
+   */
+  static int calculateMaskScore(ByteMatrix unmasked, int maskPattern) {
+    int last = unmasked.getWidth() - 1;
+    int sum1 = 0;
+    int sum2 = 0;
+    for (int i = 1; i <= last; i++) {
+      if ((unmasked.get(last, i) == 1) != getDataMaskBit(maskPattern, last, i)) {
+        sum1++;
+      }
+      if ((unmasked.get(i, last) == 1) != getDataMaskBit(maskPattern, i, last)) {
+        sum2++;
+      }
+    }
+    return sum1 <= sum2 ? sum1 * 16 + sum2 : sum2 * 16 + sum1;
+  }
+
+  /**
+   * @return 掩码 maskPattern 在 (x, y) 处是否翻转，x 为列、y 为行（表 10）
+   */
+  static boolean getDataMaskBit(int maskPattern, int x, int y) {
+    switch (maskPattern) {
+      case 0:
+        return (y & 1) == 0;
+      case 1:
+        return (((y / 2) + (x / 3)) & 1) == 0;
+      case 2:
+        return ((((x * y) & 1) + (x * y) % 3) & 1) == 0;
+      case 3:
+        return ((((x + y) & 1) + (x * y) % 3) & 1) == 0;
+      default:
+        throw new IllegalArgumentException("Invalid mask pattern: " + maskPattern);
+    }
+  }
+
+  // 位置探测图形、分隔符和定时图形；格式信息区域先置 0 占位
+  private static void embedBasicPatterns(ByteMatrix matrix) {
+    for (int y = 0; y < 7; y++) {
+      for (int x = 0; x < 7; x++) {
+        boolean ring = x == 1 || x == 5 || y == 1 || y == 5;
+        boolean inner = x >= 1 && x <= 5 && y >= 1 && y <= 5;
+        matrix.set(x, y, !inner || !ring);
+      }
+    }
+    for (int i = 0; i < 8; i++) {
+      matrix.set(7, i, 0);
+      matrix.set(i, 7, 0);
+    }
+    for (int i = 8; i < matrix.getWidth(); i++) {
+      int bit = (i + 1) % 2;
+      matrix.set(i, 0, bit);
+      matrix.set(0, i, bit);
+    }
+  }
+
+  // 最低位在第 8 列第 1 行，向下到第 8 行，再沿第 8 行从第 7 列向左到第 1 列
+  private static void embedFormatInfo(int formatInfo, ByteMatrix matrix) {
+    for (int i = 0; i < 8; i++) {
+      matrix.set(8, i + 1, ((formatInfo >>> i) & 1) != 0);
+    }
+    for (int i = 0; i < 7; i++) {
+      matrix.set(7 - i, 8, ((formatInfo >>> (8 + i)) & 1) != 0);
+    }
+  }
+
+  private static void embedDataBits(BitWriter dataBits, int maskPattern, ByteMatrix matrix)
+      throws WriterException {
+    int bitIndex = 0;
+    int direction = -1;
+    int dimension = matrix.getWidth();
+    // 从右下角开始；第 0 列只有功能图形
+    int x = dimension - 1;
+    int y = dimension - 1;
+    while (x > 0) {
+      while (y >= 0 && y < dimension) {
+        for (int i = 0; i < 2; ++i) {
+          int xx = x - i;
+          if (matrix.get(xx, y) != -1) {
+            continue;
+          }
+          boolean bit = bitIndex < dataBits.getSize() && dataBits.get(bitIndex);
+          ++bitIndex;
+          if (maskPattern != -1 && getDataMaskBit(maskPattern, xx, y)) {
+            bit = !bit;
+          }
+          matrix.set(xx, y, bit);
+        }
+        y += direction;
+      }
+      direction = -direction;
+      y += direction;
+      x -= 2;
+    }
+    if (bitIndex != dataBits.getSize()) {
+      throw new WriterException("Not all bits consumed: " + bitIndex + '/' + dataBits.getSize());
+    }
+  }
+
+}
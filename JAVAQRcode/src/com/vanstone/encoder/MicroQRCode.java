@@ -0,0 +1,92 @@
+package com.vanstone.encoder;
+
+/**
+ * 一个 Micro QR 符号，由 {@link MicroQREncoder} 生成。
+ * <p>
+ * 矩阵与 {@link QRCode} 相同，0 为白色、1 为黑色，不含空白区；Micro QR 的空白区只需 2 个模块。
+ * </p>
+ */
+public final class MicroQRCode {
+
+  public static final int NUM_MASK_PATTERNS = 4;
+
+  private Mode mode;
+  private ErrorCorrectionLevel ecLevel;
+  private MicroVersion version;
+  private int maskPattern;
+  private ByteMatrix matrix;
+
+  public MicroQRCode() {
+    maskPattern = -1;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * @return 纠错等级；M1 只有错误检测，为 {@link ErrorCorrectionLevel#L}
+   */
+  public ErrorCorrectionLevel getECLevel() {
+    return ecLevel;
+  }
+
+  public MicroVersion getVersion() {
+    return version;
+  }
+
+  public int getMaskPattern() {
+    return maskPattern;
+  }
+
+  public ByteMatrix getMatrix() {
+    return matrix;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder(200);
+    result.append("<<\n");
+    result.append(" mode: ");
+    result.append(mode);
+    result.append("\n ecLevel: ");
+    result.append(ecLevel);
+    result.append("\n version: ");
+    result.append(version);
+    result.append("\n maskPattern: ");
+    result.append(maskPattern);
+    if (matrix == null) {
+      result.append("\n matrix: null\n");
+    } else {
+      result.append("\n matrix:\n");
+      result.append(matrix);
+    }
+    result.append(">>\n");
+    return result.toString();
+  }
+
+  public void setMode(Mode value) {
+    mode = value;
+  }
+
+  public void setECLevel(ErrorCorrectionLevel value) {
+    ecLevel = value;
+  }
+
+  public void setVersion(MicroVersion version) {
+    this.version = version;
+  }
+
+  public void setMaskPattern(int value) {
+    maskPattern = value;
+  }
+
+  public void setMatrix(ByteMatrix value) {
+    matrix = value;
+  }
+
+  public static boolean isValidMaskPattern(int maskPattern) {
+    return maskPattern >= 0 && maskPattern < NUM_MASK_PATTERNS;
+  }
+
+}
@@ -0,0 +1,148 @@
+package com.vanstone.encoder;
+
+import java.util.Map;
+
+/**
+ * Micro QR 编码器（ISO 18004:2006 中的 M1 到 M4）。
+ * <p>
+ * 适合很短的内容，例如 10 到 20 个字符的零件号：同样的内容放进 11x11 到 17x17 的符号，而不是至少 21x21 的
+ * 二维码，空白区也只需 2 个模块。内容只扫描、转码一次（{@link ContentAnalysis}），按单一模式选择能容纳它的
+ * 最小版本；版本和纠错码都很小，因此 4 个掩码只评价边缘，整个编码不需要 {@link QRCode} 的版本模板和惩罚计算。
+ * </p>
+ * <p>
+ * Micro QR 不支持 ECI：{@link EncodeHintType#CHARACTER_SET} 只决定 BYTE 模式的转码，扫描器需要事先约定
+ * 字符编码。纠错等级 H 不可用；M1 只有错误检测，只在请求 {@link ErrorCorrectionLevel#L} 时使用。
+ * </p>
+ */
+public final class MicroQREncoder {
+
+  private MicroQREncoder() {
+  }
+
+  public static MicroQRCode encode(CharSequence content, ErrorCorrectionLevel ecLevel) throws WriterException {
+    return encode(content, ecLevel, null);
+  }
+
+  /**
+   * @param hints 支持 {@link EncodeHintType#CHARACTER_SET} 和 {@link EncodeHintType#MASK_PATTERN}（0 到 3）
+   * @throws WriterException 如果 M4 也放不下、纠错等级为 H，或者内容无法编码
+   */
+  public static MicroQRCode encode(CharSequence content,
+                                   ErrorCorrectionLevel ecLevel,
+                                   Map<EncodeHintType,?> hints) throws WriterException {
+    String encodingName = hints == null ? null : (String) hints.get(EncodeHintType.CHARACTER_SET);
+    if (encodingName == null) {
+      encodingName = QREncoder.DEFAULT_BYTE_MODE_ENCODING;
+    }
+    ContentAnalysis analysis = new ContentAnalysis();
+    // Micro QR 没有 HANZI 模式
+    analysis.reset(content, CharacterEncoding.forName(encodingName), false);
+    Mode mode = analysis.getMode();
+    int numLetters = mode == Mode.BYTE ? analysis.getNumBytes() : analysis.length();
+    int numDataBits = CapacityPlanner.getDataBitLength(mode, numLetters);
+    MicroVersion version = chooseVersion(mode, numLetters, numDataBits, ecLevel);
+
+    int capacityBits = version.getNumDataBits(ecLevel);
+    int numDataCodewords = version.getNumDataCodewords(ecLevel);
+    int numECCodewords = version.getNumECCodewords(ecLevel);
+    BitWriter bits = new BitWriter(numDataCodewords + numECCodewords);
+    bits.appendBits(MicroVersion.getModeIndex(mode), version.getModeIndicatorBits());
+    bits.appendBits(numLetters, version.getCharacterCountBits(mode));
+    QREncoder.appendBytes(analysis, mode, bits);
+    terminateBits(capacityBits, version, bits);
+
+    // 最后一个 4 位的数据码字在字节的高 4 位，低 4 位为 0，正是 BitWriter 中的存放方式
+    byte[] ecBytes = new byte[numECCodewords];
+    QRReedSolomon.encode(bits.getBytes(), 0, numDataCodewords, ecBytes, 0, numECCodewords);
+    // 数据位之后紧接纠错码字，4 位的数据码字只放 4 个模块
+    bits.appendBytes(ecBytes, 0, numECCodewords);
+
+    MicroQRCode micro = new MicroQRCode();
+    micro.setMode(mode);
+    micro.setECLevel(ecLevel);
+    micro.setVersion(version);
+    ByteMatrix matrix = new ByteMatrix(version.getDimension(), version.getDimension());
+    int maskPattern = maskPattern(hints);
+    if (maskPattern == -1) {
+      MicroMatrixUtil.buildMatrix(bits, ecLevel, version, -1, matrix);
+      maskPattern = chooseMaskPattern(matrix);
+    }
+    MicroMatrixUtil.buildMatrix(bits, ecLevel, version, maskPattern, matrix);
+    micro.setMaskPattern(maskPattern);
+    micro.setMatrix(matrix);
+    return micro;
+  }
+
+  /**
+   * @return 能容纳该数据段的最小版本
+   * @throws WriterException 如果没有这样的版本
+   */
+  static MicroVersion chooseVersion(Mode mode,
+                                    int numLetters,
+                                    int numDataBits,
+                                    ErrorCorrectionLevel ecLevel) throws WriterException {
+    if (ecLevel == ErrorCorrectionLevel.H) {
+      throw new WriterException("Micro QR does not support error correction level H");
+    }
+    for (int versionNum = 1; versionNum <= 4; versionNum++) {
+      MicroVersion version = MicroVersion.getVersionForNumber(versionNum);
+      int characterCountBits = version.getCharacterCountBits(mode);
+      if (!version.isSupported(ecLevel) || characterCountBits == 0 || numLetters >= (1 << characterCountBits)) {
+        continue;
+      }
+      int numBits = version.getModeIndicatorBits() + characterCountBits + numDataBits;
+      if (numBits <= version.getNumDataBits(ecLevel)) {
+        return version;
+      }
+    }
+    throw new WriterException("Data too big for Micro QR");
+  }
+
+  /**
+   * 追加结束符（不超过容量时为 2 * 版本号 + 1 个 0），补齐到码字边界，再交替填充 0xEC、0x11；
+   * M1、M3 最后 4 位的码字填 0
+   */
+  static void terminateBits(int capacityBits, MicroVersion version, BitWriter bits) throws WriterException {
+    if (bits.getSize() > capacityBits) {
+      throw new WriterException("data bits cannot fit in the Micro QR symbol: " + bits.getSize() + " > "
+          + capacityBits);
+    }
+    bits.appendBits(0, Math.min(version.getTerminatorBits(), capacityBits - bits.getSize()));
+    int numBitsInLastByte = bits.getSize() & 0x07;
+    if (numBitsInLastByte > 0) {
+      bits.appendBits(0, Math.min(8 - numBitsInLastByte, capacityBits - bits.getSize()));
+    }
+    for (int i = 0; bits.getSize() + 8 <= capacityBits; i++) {
+      bits.appendBits((i & 0x01) == 0 ? 0xEC : 0x11, 8);
+    }
+    bits.appendBits(0, capacityBits - bits.getSize());
+  }
+
+  /**
+   * @return 掩码评分最高的掩码（分数相同时取编号小的）
+   */
+  static int chooseMaskPattern(ByteMatrix unmasked) {
+    int bestScore = -1;
+    int bestMaskPattern = 0;
+    for (int maskPattern = 0; maskPattern < MicroQRCode.NUM_MASK_PATTERNS; maskPattern++) {
+      int score = MicroMatrixUtil.calculateMaskScore(unmasked, maskPattern);
+      if (score > bestScore) {
+        bestScore = score;
+        bestMaskPattern = maskPattern;
+      }
+    }
+    return bestMaskPattern;
+  }
+
+  private static int maskPattern(Map<EncodeHintType,?> hints) throws WriterException {
+    Integer maskPattern = hints == null ? null : (Integer) hints.get(EncodeHintType.MASK_PATTERN);
+    if (maskPattern == null) {
+      return -1;
+    }
+    if (!MicroQRCode.isValidMaskPattern(maskPattern)) {
+      throw new WriterException("Invalid Micro QR mask pattern: " + maskPattern);
+    }
+    return maskPattern;
+  }
+
+}
@@ -0,0 +1,150 @@
+package com.vanstone.encoder;
+
+/**
+ * Micro QR 的版本 M1 到 M4（ISO 18004:2006 表 1、表 3、表 9）。
+ * <p>
+ * Micro QR 只有左上角一个位置探测图形，边长为 11、13、15、17，纠错码只有一个块。M1 只有错误检测，
+ * 以 {@link ErrorCorrectionLevel#L} 表示；M2、M3 支持 L、M，M4 支持 L、M、Q，都不支持 H。
+ * M1 与 M3 的最后一个数据码字只有 4 位。模式指示符为 0 到 3 位，M1 只支持 NUMERIC，
+ * M2 增加 ALPHANUMERIC，M3、M4 还支持 BYTE 与 KANJI；不支持 ECI、Structured Append 等其他模式。
+ * </p>
+ */
+public final class MicroVersion {
+
+  // 纠错码字数，按 L、M、Q 排列，0 表示不支持
+  private static final int[][] EC_CODEWORDS = {
+      {2, 0, 0},
+      {5, 6, 0},
+      {6, 8, 0},
+      {8, 10, 14},
+  };
+
+  // 格式信息中的符号编号，按 L、M、Q 排列
+  private static final int[][] SYMBOL_NUMBERS = {
+      {0, -1, -1},
+      {1, 2, -1},
+      {3, 4, -1},
+      {5, 6, 7},
+  };
+
+  // 字符计数位数，按 NUMERIC、ALPHANUMERIC、BYTE、KANJI 排列，0 表示该版本不支持该模式
+  private static final int[][] CHARACTER_COUNT_BITS = {
+      {3, 0, 0, 0},
+      {4, 3, 0, 0},
+      {5, 4, 4, 3},
+      {6, 5, 5, 4},
+  };
+
+  private static final MicroVersion[] VERSIONS = {
+      new MicroVersion(1), new MicroVersion(2), new MicroVersion(3), new MicroVersion(4),
+  };
+
+  private final int versionNumber;
+
+  private MicroVersion(int versionNumber) {
+    this.versionNumber = versionNumber;
+  }
+
+  /**
+   * @param versionNumber 1 到 4，对应 M1 到 M4
+   */
+  public static MicroVersion getVersionForNumber(int versionNumber) {
+    if (versionNumber < 1 || versionNumber > VERSIONS.length) {
+      throw new IllegalArgumentException("Invalid Micro QR version: " + versionNumber);
+    }
+    return VERSIONS[versionNumber - 1];
+  }
+
+  public int getVersionNumber() {
+    return versionNumber;
+  }
+
+  public int getDimension() {
+    return 9 + 2 * versionNumber;
+  }
+
+  /**
+   * @return 该版本是否支持纠错等级 ecLevel
+   */
+  public boolean isSupported(ErrorCorrectionLevel ecLevel) {
+    return getNumECCodewords(ecLevel) != 0;
+  }
+
+  /**
+   * @return 纠错码字数，不支持该纠错等级时为 0
+   */
+  public int getNumECCodewords(ErrorCorrectionLevel ecLevel) {
+    if (ecLevel == ErrorCorrectionLevel.H) {
+      return 0;
+    }
+    return EC_CODEWORDS[versionNumber - 1][ecLevel.ordinal()];
+  }
+
+  /**
+   * @return 数据部分的位数：除去功能图形、格式信息和纠错码字后的模块数
+   */
+  public int getNumDataBits(ErrorCorrectionLevel ecLevel) {
+    int dimension = getDimension();
+    return (dimension - 1) * (dimension - 1) - 64 - getNumECCodewords(ecLevel) * 8;
+  }
+
+  /**
+   * @return 数据码字数，M1 与 M3 包括最后一个 4 位的码字
+   */
+  public int getNumDataCodewords(ErrorCorrectionLevel ecLevel) {
+    return (getNumDataBits(ecLevel) + 7) / 8;
+  }
+
+  /**
+   * @return 模式指示符的位数，M1 为 0
+   */
+  public int getModeIndicatorBits() {
+    return versionNumber - 1;
+  }
+
+  /**
+   * @return 结束符的位数
+   */
+  public int getTerminatorBits() {
+    return 2 * versionNumber + 1;
+  }
+
+  /**
+   * @return mode 的字符计数位数，该版本不支持 mode 时为 0
+   */
+  public int getCharacterCountBits(Mode mode) {
+    int index = getModeIndex(mode);
+    return index == -1 ? 0 : CHARACTER_COUNT_BITS[versionNumber - 1][index];
+  }
+
+  /**
+   * @return Micro QR 中 mode 的模式指示符，不支持的模式为 -1
+   */
+  static int getModeIndex(Mode mode) {
+    switch (mode) {
+      case NUMERIC:
+        return 0;
+      case ALPHANUMERIC:
+        return 1;
+      case BYTE:
+        return 2;
+      case KANJI:
+        return 3;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * @return 格式信息中的 3 位符号编号
+   */
+  int getSymbolNumber(ErrorCorrectionLevel ecLevel) {
+    return SYMBOL_NUMBERS[versionNumber - 1][ecLevel.ordinal()];
+  }
+
+  @Override
+  public String toString() {
+    return "M" + versionNumber;
+  }
+
+}
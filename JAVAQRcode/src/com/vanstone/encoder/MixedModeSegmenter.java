@@ -0,0 +1,466 @@
+package com.vanstone.encoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 混合模式分段：把内容分成若干 NUMERIC / ALPHANUMERIC / BYTE / KANJI / HANZI 数据段，使总位数最少。
+ * <p>
+ * 与 LibQRCode 的 split.c 目的相同，但用动态规划求最优解：cost[i][m] 为前 i 个字符、且第 i 个字符
+ * 使用模式 m 时的最少位数。为了处理数字模式每字符 10/3 位、字母数字模式每字符 11/2 位的小数，
+ * 费用以 1/6 位为单位；切换模式时先把前一段向上取整到整位，再加上新段的模式指示符和字符计数位。
+ * 字符计数位与版本有关（1-9、10-26、27-40 三组），因此每组版本分别求解。
+ * </p>
+ * <p>
+ * 字符类别和各字符的字节数取自 {@link ContentAnalysis}，BYTE 与 KANJI 段直接截取其中已经转码的字节。
+ * KANJI 只在字符编码为 Shift_JIS 时使用，与 {@link ContentAnalysis#getMode()} 一致；
+ * HANZI 只在启用 {@link EncodeHintType#HANZI_MODE} 时使用，其模式指示符后还有 4 位子集指示符。
+ * GS1 内容中的分隔符在 ALPHANUMERIC 段中写为 '%'、'%' 写为 "%%"，在 BYTE 段中为 0x1D。
+ * </p>
+ */
+final class MixedModeSegmenter {
+
+  private static final Mode[] MODES = {Mode.NUMERIC, Mode.ALPHANUMERIC, Mode.BYTE, Mode.KANJI, Mode.HANZI};
+  private static final int NUMERIC = 0;
+  private static final int ALPHANUMERIC = 1;
+  private static final int BYTE = 2;
+  private static final int KANJI = 3;
+  private static final int HANZI = 4;
+
+  // 每组版本中的最小版本，用于取字符计数位
+  private static final int[] VERSION_GROUP_STARTS = {1, 10, 27};
+  private static final int[] VERSION_GROUP_ENDS = {9, 26, 40};
+
+  /**
+   * 一个数据段：内容中 [start, end) 的字符使用同一种模式
+   */
+  static final class Segment {
+    private final Mode mode;
+    private final int start;
+    private final int end;
+
+    Segment(Mode mode, int start, int end) {
+      this.mode = mode;
+      this.start = start;
+      this.end = end;
+    }
+
+    Mode getMode() {
+      return mode;
+    }
+
+    int getStart() {
+      return start;
+    }
+
+    int getEnd() {
+      return end;
+    }
+  }
+
+  private final ContentAnalysis content;
+  private final int start;
+  private final int end;
+
+  private List<Segment> segments;
+  private Version version;
+
+  private MixedModeSegmenter(ContentAnalysis content, int start, int end) {
+    this.content = content;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * @return 分段是否可能比单一模式 mode 更短：单一模式已经是 NUMERIC，或者是 ALPHANUMERIC 但没有数字，
+   *   或者是 BYTE 但没有数字和字母数字字符（Shift_JIS 或启用 HANZI 模式时还可能有汉字）时不可能
+   */
+  static boolean mayBeShorter(ContentAnalysis content, Mode mode) {
+    if (mode == Mode.NUMERIC || content.length() < 2) {
+      return false;
+    }
+    if (mode == Mode.BYTE && (content.getEncoding().isShiftJis() || content.hasHanzi())) {
+      return true;
+    }
+    return content.hasNumeric() || (mode == Mode.BYTE && content.hasAlphanumeric());
+  }
+
+  /**
+   * 在调用 {@link #segment} 之前排除不可能得到更小版本的内容：每个字符按可用模式中最少的位数计算，
+   * 整个内容只计一个数据段的模式指示符和最短的字符计数位，不计 ECI，得到分段总位数的下界。
+   * 只扫描一遍内容，不分配对象
+   *
+   * @param version 单一模式使用的版本
+   * @return 下界对应的版本是否小于 version；为 false 时分段不可能更短
+   */
+  static boolean mayFitSmallerVersion(ContentAnalysis content, ErrorCorrectionLevel ecLevel, Version version) {
+    Version firstGroup = Version.getVersionForNumber(VERSION_GROUP_STARTS[0]);
+    int headerBits = Integer.MAX_VALUE;
+    for (Mode mode : MODES) {
+      headerBits = Math.min(headerBits,
+          CapacityPlanner.getModeIndicatorBits(mode) + mode.getCharacterCountBits(firstGroup));
+    }
+    // 费用单位为 1/6 位
+    long cost = 0;
+    for (int i = 0; i < content.length(); i++) {
+      int minCharCost = Integer.MAX_VALUE;
+      for (int m = 0; m < MODES.length; m++) {
+        minCharCost = Math.min(minCharCost, charCost(content, i, m));
+      }
+      cost += minCharCost;
+    }
+    long numBits = headerBits + (cost + 5) / 6;
+    if (numBits > Integer.MAX_VALUE) {
+      return false;
+    }
+    Version lowerBound = CapacityPlanner.findVersion((int) numBits, ecLevel);
+    return lowerBound != null && lowerBound.getVersionNumber() < version.getVersionNumber();
+  }
+
+  /**
+   * 求出能容纳 content 的最小版本及其最优分段
+   *
+   * @param headerBits 数据段之前的固定位数（不含 ECI，ECI 在有 BYTE 段时另外计入）
+   * @return 分段结果；任何版本都放不下时返回 null
+   */
+  static MixedModeSegmenter segment(ContentAnalysis content,
+                                    ErrorCorrectionLevel ecLevel,
+                                    int headerBits) throws WriterException {
+    return segment(content, 0, content.length(), ecLevel, headerBits);
+  }
+
+  /**
+   * 与 {@link #segment(ContentAnalysis, ErrorCorrectionLevel, int)} 相同，但只编码 [start, end) 的字符，
+   * 各数据段的位置仍以整个内容为准
+   */
+  static MixedModeSegmenter segment(ContentAnalysis content,
+                                    int start,
+                                    int end,
+                                    ErrorCorrectionLevel ecLevel,
+                                    int headerBits) throws WriterException {
+    MixedModeSegmenter segmenter = new MixedModeSegmenter(content, start, end);
+    for (int group = 0; group < VERSION_GROUP_STARTS.length; group++) {
+      Version groupVersion = Version.getVersionForNumber(VERSION_GROUP_STARTS[group]);
+      List<Segment> groupSegments = segmenter.solve(groupVersion);
+      int numBits = headerBits + segmenter.getBitLength(groupSegments, groupVersion);
+      Version version = CapacityPlanner.findVersion(numBits, ecLevel);
+      if (version == null) {
+        // 最大版本也放不下
+        return null;
+      }
+      if (version.getVersionNumber() <= VERSION_GROUP_ENDS[group]) {
+        // 使用本组的字符计数位放得下；更小的组已经试过，所以这就是最小版本
+        segmenter.segments = groupSegments;
+        segmenter.version = version;
+        return segmenter;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return 以 version 所在版本组的字符计数位最优分段时的总位数，不论是否放得下
+   */
+  static int getMinBitLength(ContentAnalysis content, Version version) {
+    MixedModeSegmenter segmenter = new MixedModeSegmenter(content, 0, content.length());
+    return segmenter.getBitLength(segmenter.solve(version), version);
+  }
+
+  /**
+   * 从 start 开始逐个字符扩展，估计能放进版本不超过 maxVersion、且总位数不超过 maxBits 的最长部分的结束位置，
+   * 不超过 limit。费用与版本组的选择都与 {@link #segment} 相同，但只做一遍前向计算、不回溯分段；
+   * ECI 只在已经出现只能用 BYTE 模式的字符时计入，因此估计不会偏短，调用者应再用 segment 确认。
+   *
+   * @return 结束位置；一个字符都放不下时返回 start
+   */
+  static int estimateMaxEnd(ContentAnalysis content,
+                            int start,
+                            int limit,
+                            ErrorCorrectionLevel ecLevel,
+                            int headerBits,
+                            int maxVersion,
+                            int maxBits) {
+    return new MixedModeSegmenter(content, start, limit).estimateMaxEnd(ecLevel, headerBits, maxVersion, maxBits);
+  }
+
+  private int estimateMaxEnd(ErrorCorrectionLevel ecLevel, int headerBits, int maxVersion, int maxBits) {
+    int numGroups = VERSION_GROUP_STARTS.length;
+    int numModes = MODES.length;
+    int[][] headerCosts = new int[numGroups][numModes];
+    for (int group = 0; group < numGroups; group++) {
+      Version groupVersion = Version.getVersionForNumber(VERSION_GROUP_STARTS[group]);
+      for (int m = 0; m < numModes; m++) {
+        headerCosts[group][m] =
+            (CapacityPlanner.getModeIndicatorBits(MODES[m]) + MODES[m].getCharacterCountBits(groupVersion)) * 6;
+      }
+    }
+    int eciBits = !content.getEncoding().isDefault() && content.getEncoding().getECI() != null ? 4 + 8 : 0;
+    boolean hasByte = false;
+    int[][] costs = new int[numGroups][numModes];
+    int[] nextCosts = new int[numModes];
+    int bestEnd = start;
+    for (int i = start; i < end; i++) {
+      for (int group = 0; group < numGroups; group++) {
+        int[] groupCosts = costs[group];
+        int minRounded = 0;
+        if (i > start) {
+          minRounded = Integer.MAX_VALUE;
+          for (int m = 0; m < numModes; m++) {
+            if (groupCosts[m] != Integer.MAX_VALUE) {
+              minRounded = Math.min(minRounded, (groupCosts[m] + 5) / 6 * 6);
+            }
+          }
+        }
+        boolean canSwitch = i == start || content.getByteOffset(i) != content.getByteOffset(i + 1);
+        for (int m = 0; m < numModes; m++) {
+          int charCost = charCost(content, i, m);
+          if (charCost == Integer.MAX_VALUE) {
+            nextCosts[m] = Integer.MAX_VALUE;
+            continue;
+          }
+          int best = i > start && groupCosts[m] != Integer.MAX_VALUE ? groupCosts[m] + charCost : Integer.MAX_VALUE;
+          if (canSwitch) {
+            best = Math.min(best, minRounded + headerCosts[group][m] + charCost);
+          }
+          nextCosts[m] = best;
+        }
+        System.arraycopy(nextCosts, 0, groupCosts, 0, numModes);
+      }
+      hasByte |= content.getCharClass(i) == ContentAnalysis.BYTE;
+      int segmentEnd = i + 1;
+      if (segmentEnd < content.length()
+          && content.getByteOffset(segmentEnd) == content.getByteOffset(segmentEnd + 1)) {
+        // 不能在代理对中间结束
+        continue;
+      }
+      if (!fitsEstimate(costs, headerBits + (hasByte ? eciBits : 0), ecLevel, maxVersion, maxBits)) {
+        // 位数随结束位置单调不减，之后也放不下
+        break;
+      }
+      bestEnd = segmentEnd;
+    }
+    return bestEnd;
+  }
+
+  private static boolean fitsEstimate(int[][] costs,
+                                      int headerBits,
+                                      ErrorCorrectionLevel ecLevel,
+                                      int maxVersion,
+                                      int maxBits) {
+    for (int group = 0; group < costs.length; group++) {
+      int minCost = Integer.MAX_VALUE;
+      for (int cost : costs[group]) {
+        if (cost != Integer.MAX_VALUE) {
+          minCost = Math.min(minCost, (cost + 5) / 6);
+        }
+      }
+      int numBits = headerBits + minCost;
+      Version version = CapacityPlanner.findVersion(numBits, ecLevel);
+      if (version == null) {
+        return false;
+      }
+      if (version.getVersionNumber() <= VERSION_GROUP_ENDS[group]) {
+        return version.getVersionNumber() <= maxVersion && numBits <= maxBits;
+      }
+    }
+    return false;
+  }
+
+  List<Segment> getSegments() {
+    return segments;
+  }
+
+  Version getVersion() {
+    return version;
+  }
+
+  /**
+   * @return 各数据段编码后的总位数（包括 ECI）
+   */
+  int getBitLength() {
+    return getBitLength(segments, version);
+  }
+
+  /**
+   * 依次追加各数据段的模式指示符、字符计数和数据；有 BYTE 段且字符编码不是 ISO-8859-1 时先追加 ECI
+   */
+  void appendTo(BitWriter bits) throws WriterException {
+    if (needsECI(segments)) {
+      CharacterSetECI eci = content.getEncoding().getECI();
+      if (eci != null) {
+        QREncoder.appendECI(eci, bits);
+      }
+    }
+    for (Segment segment : segments) {
+      Mode mode = segment.getMode();
+      QREncoder.appendModeInfo(mode, bits);
+      QREncoder.appendLengthInfo(getNumLetters(segment), version, mode, bits);
+      int start = segment.getStart();
+      int end = segment.getEnd();
+      int byteOffset = content.getByteOffset(start);
+      int numBytes = content.getByteOffset(end) - byteOffset;
+      switch (mode) {
+        case NUMERIC:
+          QREncoder.appendNumericBytes(content.getContent(), start, end, bits);
+          break;
+        case ALPHANUMERIC:
+          if (content.isGS1()) {
+            QREncoder.appendGS1AlphanumericBytes(content.getContent(), start, end, bits);
+          } else {
+            QREncoder.appendAlphanumericBytes(content.getContent(), start, end, bits);
+          }
+          break;
+        case BYTE:
+          bits.appendBytes(content.getBytes(), byteOffset, numBytes);
+          break;
+        case KANJI:
+          QREncoder.appendKanjiBytes(content.getBytes(), byteOffset, numBytes, bits);
+          break;
+        default:
+          QREncoder.appendHanziBytes(content.getContent(), start, end, bits);
+          break;
+      }
+    }
+  }
+
+  private boolean needsECI(List<Segment> segments) {
+    if (content.getEncoding().isDefault()) {
+      return false;
+    }
+    for (Segment segment : segments) {
+      if (segment.getMode() == Mode.BYTE) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return 字符计数：BYTE 段为字节数，ALPHANUMERIC 段为编码后的字符数，其余为字符数
+   */
+  private int getNumLetters(Segment segment) {
+    if (segment.getMode() == Mode.BYTE) {
+      return content.getByteOffset(segment.getEnd()) - content.getByteOffset(segment.getStart());
+    }
+    if (segment.getMode() == Mode.ALPHANUMERIC) {
+      return content.getAlphanumericLength(segment.getStart(), segment.getEnd());
+    }
+    return segment.getEnd() - segment.getStart();
+  }
+
+  /**
+   * @return 各数据段编码后的总位数
+   */
+  private int getBitLength(List<Segment> segments, Version version) {
+    int numBits = 0;
+    if (needsECI(segments) && content.getEncoding().getECI() != null) {
+      numBits += 4 + 8;
+    }
+    for (Segment segment : segments) {
+      Mode mode = segment.getMode();
+      int numLetters = getNumLetters(segment);
+      numBits += CapacityPlanner.getModeIndicatorBits(mode) + mode.getCharacterCountBits(version)
+          + CapacityPlanner.getDataBitLength(mode, numLetters);
+    }
+    return numBits;
+  }
+
+  /**
+   * 动态规划求 [start, end) 在 version 所在版本组的最优分段
+   */
+  private List<Segment> solve(Version version) {
+    int length = end - start;
+    int numModes = MODES.length;
+    int[] headerCosts = new int[numModes];
+    for (int m = 0; m < numModes; m++) {
+      headerCosts[m] =
+          (CapacityPlanner.getModeIndicatorBits(MODES[m]) + MODES[m].getCharacterCountBits(version)) * 6;
+    }
+    // 费用单位为 1/6 位；Integer.MAX_VALUE 表示该字符不能使用该模式
+    int[] costs = new int[numModes];
+    int[] nextCosts = new int[numModes];
+    // from[(i - start) * numModes + m]：第 i 个字符使用模式 m 时，第 i - 1 个字符使用的模式（-1 表示没有）
+    byte[] from = new byte[length * numModes];
+    for (int i = start; i < end; i++) {
+      int minRounded = Integer.MAX_VALUE;
+      int minMode = -1;
+      if (i > start) {
+        for (int m = 0; m < numModes; m++) {
+          if (costs[m] != Integer.MAX_VALUE) {
+            int rounded = (costs[m] + 5) / 6 * 6;
+            if (rounded < minRounded) {
+              minRounded = rounded;
+              minMode = m;
+            }
+          }
+        }
+      } else {
+        minRounded = 0;
+      }
+      for (int m = 0; m < numModes; m++) {
+        int charCost = charCost(content, i, m);
+        if (charCost == Integer.MAX_VALUE) {
+          nextCosts[m] = Integer.MAX_VALUE;
+          continue;
+        }
+        // 延续同一模式
+        int best = i > start && costs[m] != Integer.MAX_VALUE ? costs[m] + charCost : Integer.MAX_VALUE;
+        int bestFrom = m;
+        // 切换到新的数据段；没有字节的字符（代理对的低位代理）必须与前一个字符在同一段
+        if (i == start || content.getByteOffset(i) != content.getByteOffset(i + 1)) {
+          int switched = minRounded + headerCosts[m] + charCost;
+          if (switched < best) {
+            best = switched;
+            bestFrom = minMode;
+          }
+        }
+        nextCosts[m] = best;
+        from[(i - start) * numModes + m] = (byte) bestFrom;
+      }
+      int[] temp = costs;
+      costs = nextCosts;
+      nextCosts = temp;
+    }
+
+    int mode = -1;
+    int minCost = Integer.MAX_VALUE;
+    for (int m = 0; m < numModes; m++) {
+      if (costs[m] != Integer.MAX_VALUE && (costs[m] + 5) / 6 < minCost) {
+        minCost = (costs[m] + 5) / 6;
+        mode = m;
+      }
+    }
+    List<Segment> result = new ArrayList<>();
+    int segmentEnd = end;
+    for (int i = end - 1; i >= start; i--) {
+      int previous = from[(i - start) * numModes + mode];
+      if (previous != mode || i == start) {
+        result.add(0, new Segment(MODES[mode], i, segmentEnd));
+        segmentEnd = i;
+        mode = previous;
+      }
+    }
+    return result;
+  }
+
+  private static int charCost(ContentAnalysis content, int i, int mode) {
+    byte charClass = content.getCharClass(i);
+    switch (mode) {
+      case NUMERIC:
+        return charClass == ContentAnalysis.NUMERIC ? 20 : Integer.MAX_VALUE;
+      case ALPHANUMERIC:
+        if (charClass != ContentAnalysis.NUMERIC && charClass != ContentAnalysis.ALPHANUMERIC) {
+          return Integer.MAX_VALUE;
+        }
+        // GS1 内容中的 '%' 写为 "%%"
+        return content.isGS1() && content.getContent().charAt(i) == '%' ? 66 : 33;
+      case BYTE:
+        return (content.getByteOffset(i + 1) - content.getByteOffset(i)) * 48;
+      case KANJI:
+        return charClass == ContentAnalysis.KANJI ? 78 : Integer.MAX_VALUE;
+      default:
+        return charClass == ContentAnalysis.HANZI ? 78 : Integer.MAX_VALUE;
+    }
+  }
+
+}
@@ -13,7 +13,7 @@ public enum Mode {
 	TERMINATOR(new int[] { 0, 0, 0 }, 0x00), // 并非正真的模式
 	NUMERIC(new int[] { 10, 12, 14 }, 0x01),
 	ALPHANUMERIC(new int[] { 9, 11, 13 }, 0x02), 
-	STRUCTURED_APPEND(new int[] { 0, 0,0 }, 0x03), // 不支持
+	STRUCTURED_APPEND(new int[] { 0, 0,0 }, 0x03), // 见 QREncoder#encodeStructuredAppend
 	BYTE(new int[] { 8, 16, 16 }, 0x04), 
 	ECI(new int[] { 0, 0, 0 }, 0x07), // 标准22页，表2 iso-iec -18004
 	KANJI(new int[] { 8, 10, 12 }, 0x08), 
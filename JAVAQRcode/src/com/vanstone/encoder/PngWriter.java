@@ -0,0 +1,351 @@
+package com.vanstone.encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 直接把二维码矩阵写成 1 位灰度 PNG，不经过 BufferedImage 和 ImageIO。
+ * <p>
+ * 每个模块行用 {@link MatrixRenderer} 放大为一个像素行后立即压缩写出，内存中只有两行像素和一个 IDAT 块的缓冲区，
+ * 不会生成整个图像的光栅。同一模块行重复的 scale - 1 个像素行写为 Up 过滤器的全 0 行，
+ * 这些行每个图像只压缩一次（从空字典开始、以 SYNC_FLUSH 结束），之后直接复制到输出中；
+ * 与上一个模块行相同的模块行也整块复制。为了能在任意位置插入这些数据，像素行只用 Huffman 编码，
+ * 不引用之前的内容，并在插入前 SYNC_FLUSH 到字节边界。zlib 的 Adler-32 按公式计算重复行，不需要逐字节累加。
+ * </p>
+ * <p>
+ * 每个线程复用一个 {@link Deflater}。黑色模块为 0、白色为 1，图像四周加上 quietZone 个模块的空白区。
+ * </p>
+ */
+public final class PngWriter {
+
+  private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+  private static final int IHDR = 0x49484452;
+  private static final int IDAT = 0x49444154;
+  private static final int IEND = 0x49454E44;
+  private static final int FILTER_NONE = 0;
+  private static final int FILTER_UP = 2;
+  // 一个 IDAT 块的最大数据长度
+  private static final int CHUNK_SIZE = 8192;
+  private static final int ADLER_BASE = 65521;
+  // 用 int 累加时不溢出的最大字节数
+  private static final int ADLER_NMAX = 3800;
+
+  // 每个线程两个 Deflater：[0] 只用 Huffman 编码压缩像素行，[1] 压缩重复的全 0 行；
+  // zlib 头和 Adler-32 由 PngWriter 自己写
+  private static final ThreadLocal<Deflater[]> DEFLATERS = new ThreadLocal<Deflater[]>() {
+    @Override
+    protected Deflater[] initialValue() {
+      Deflater rows = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      rows.setStrategy(Deflater.HUFFMAN_ONLY);
+      // 新的策略在下一次 deflate 时才生效，而且那一次不按 flush 参数输出；先用一次空的调用让它生效
+      rows.deflate(new byte[16]);
+      return new Deflater[] {rows, new Deflater(Deflater.DEFAULT_COMPRESSION, true)};
+    }
+  };
+
+  private final OutputStream out;
+  private final WritableByteChannel channel;
+  private final Deflater deflater;
+  private final Deflater blockDeflater;
+  private final CRC32 crc = new CRC32();
+  // 长度、类型、最多 CHUNK_SIZE 字节的数据和 CRC
+  private final byte[] chunk = new byte[CHUNK_SIZE + 12];
+  private int chunkLength;
+  private int adlerA = 1;
+  private int adlerB;
+
+  private MatrixRenderer renderer;
+  private int lineLength;
+  private byte[] scanline;
+  private byte[] previous;
+  private boolean hasPrevious;
+  // deflater 中是否有还没有 flush 的像素行
+  private boolean unflushed;
+  private int scale;
+  // scale - 1 个和 scale 个 Up 全 0 行压缩后的数据
+  private byte[] repeatedRows;
+  private byte[] sameRows;
+
+  private PngWriter(OutputStream out, WritableByteChannel channel) {
+    this.out = out;
+    this.channel = channel;
+    Deflater[] deflaters = DEFLATERS.get();
+    this.deflater = deflaters[0];
+    this.blockDeflater = deflaters[1];
+  }
+
+  /**
+   * @param matrix 二维码矩阵，1 为黑色
+   * @param scale 每个模块的像素数
+   * @param quietZone 四周空白区的模块数
+   */
+  public static void write(ByteMatrix matrix, int scale, int quietZone, OutputStream out) throws IOException {
+    new PngWriter(out, null).write(matrix, scale, quietZone);
+  }
+
+  /**
+   * @see #write(ByteMatrix, int, int, OutputStream)
+   */
+  public static void write(ByteMatrix matrix, int scale, int quietZone, WritableByteChannel channel)
+      throws IOException {
+    new PngWriter(null, channel).write(matrix, scale, quietZone);
+  }
+
+  /**
+   * 写出 {@link Encoder} 渲染的像素矩阵，每个像素放大 scale 倍，不再加空白区
+   */
+  public static void write(BitMatrix matrix, int scale, OutputStream out) throws IOException {
+    new PngWriter(out, null).write(matrix, scale);
+  }
+
+  /**
+   * @see #write(BitMatrix, int, OutputStream)
+   */
+  public static void write(BitMatrix matrix, int scale, WritableByteChannel channel) throws IOException {
+    new PngWriter(null, channel).write(matrix, scale);
+  }
+
+  private void write(ByteMatrix matrix, int scale, int quietZone) throws IOException {
+    if (quietZone < 0) {
+      throw new IllegalArgumentException("Negative quiet zone: " + quietZone);
+    }
+    begin(matrix.getWidth(), matrix.getHeight(), scale, quietZone);
+    byte[][] modules = matrix.getArray();
+    for (int y = 0; y < matrix.getHeight(); y++) {
+      writeRow(renderer.renderRow(modules[y]));
+    }
+    end(quietZone);
+  }
+
+  private void write(BitMatrix matrix, int scale) throws IOException {
+    int width = matrix.getWidth();
+    begin(width, matrix.getHeight(), scale, 0);
+    byte[] modules = new byte[width];
+    for (int y = 0; y < matrix.getHeight(); y++) {
+      for (int x = 0; x < width; x++) {
+        modules[x] = (byte) (matrix.get(x, y) ? 1 : 0);
+      }
+      writeRow(renderer.renderRow(modules));
+    }
+    end(0);
+  }
+
+  private void begin(int inputWidth, int inputHeight, int scale, int quietZone) throws IOException {
+    if (scale < 1) {
+      throw new IllegalArgumentException("Scale must be positive: " + scale);
+    }
+    long imageWidth = (long) (inputWidth + 2 * quietZone) * scale;
+    long imageHeight = (long) (inputHeight + 2 * quietZone) * scale;
+    if (imageWidth > Integer.MAX_VALUE - 31 || imageHeight > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Image too large: " + imageWidth + 'x' + imageHeight);
+    }
+    this.scale = scale;
+    renderer = new MatrixRenderer(inputWidth, scale, quietZone * scale, (int) imageWidth);
+    lineLength = 1 + (int) ((imageWidth + 7) / 8);
+    scanline = new byte[lineLength];
+    previous = new byte[lineLength];
+    repeatedRows = compressUpRows(scale - 1);
+    sameRows = compressUpRows(scale);
+    deflater.reset();
+
+    output(SIGNATURE, SIGNATURE.length);
+    putInt(chunk, 8, (int) imageWidth);
+    putInt(chunk, 12, (int) imageHeight);
+    chunk[16] = 1; // 位深度
+    chunk[17] = 0; // 灰度
+    chunk[18] = 0; // deflate
+    chunk[19] = 0; // 自适应过滤
+    chunk[20] = 0; // 不隔行扫描
+    chunkLength = 13;
+    writeChunk(IHDR);
+    // zlib 头：deflate，32K 窗口，默认压缩级别
+    chunk[8] = 0x78;
+    chunk[9] = (byte) 0x9C;
+    chunkLength = 2;
+
+    for (int i = 0; i < quietZone; i++) {
+      writeRow(null);
+    }
+  }
+
+  private void end(int quietZone) throws IOException {
+    for (int i = 0; i < quietZone; i++) {
+      writeRow(null);
+    }
+    deflater.finish();
+    while (!deflater.finished()) {
+      chunkLength += deflater.deflate(chunk, 8 + chunkLength, CHUNK_SIZE - chunkLength);
+      if (chunkLength == CHUNK_SIZE) {
+        writeChunk(IDAT);
+      }
+    }
+    if (chunkLength + 4 > CHUNK_SIZE) {
+      writeChunk(IDAT);
+    }
+    putInt(chunk, 8 + chunkLength, (adlerB << 16) | adlerA);
+    chunkLength += 4;
+    writeChunk(IDAT);
+    writeChunk(IEND);
+    if (out != null) {
+      out.flush();
+    }
+  }
+
+  /**
+   * 写出一个模块行放大后的 scale 个像素行
+   *
+   * @param pixels {@link MatrixRenderer#renderRow} 的结果，null 表示全白
+   */
+  private void writeRow(int[] pixels) throws IOException {
+    buildScanline(pixels);
+    if (hasPrevious && Arrays.equals(scanline, previous)) {
+      appendCompressed(sameRows);
+      updateAdlerUpRows(scale);
+      return;
+    }
+    deflater.setInput(scanline, 0, lineLength);
+    deflate(Deflater.NO_FLUSH);
+    unflushed = true;
+    updateAdler(scanline, lineLength);
+    appendCompressed(repeatedRows);
+    updateAdlerUpRows(scale - 1);
+    byte[] temp = previous;
+    previous = scanline;
+    scanline = temp;
+    hasPrevious = true;
+  }
+
+  // 像素行为低位在左、1 为黑色；PNG 为高位在左、0 为黑色
+  private void buildScanline(int[] pixels) {
+    scanline[0] = FILTER_NONE;
+    if (pixels == null) {
+      Arrays.fill(scanline, 1, lineLength, (byte) 0xFF);
+      return;
+    }
+    for (int i = 1; i < lineLength; i++) {
+      int index = i - 1;
+      int word = Integer.reverse(pixels[index >>> 2]);
+      scanline[i] = (byte) ~(word >>> (24 - ((index & 0x03) << 3)));
+    }
+  }
+
+  // 把输入全部交给 deflater，输出写入 IDAT
+  private void deflate(int flush) throws IOException {
+    while (true) {
+      chunkLength += deflater.deflate(chunk, 8 + chunkLength, CHUNK_SIZE - chunkLength, flush);
+      if (chunkLength == CHUNK_SIZE) {
+        writeChunk(IDAT);
+      } else if (flush != Deflater.NO_FLUSH || deflater.needsInput()) {
+        return;
+      }
+    }
+  }
+
+  // 插入预先压缩的数据；之前的像素行先以 SYNC_FLUSH 结束在字节边界上
+  private void appendCompressed(byte[] data) throws IOException {
+    if (data.length == 0) {
+      return;
+    }
+    if (unflushed) {
+      deflate(Deflater.SYNC_FLUSH);
+      unflushed = false;
+    }
+    int offset = 0;
+    while (offset < data.length) {
+      int length = Math.min(data.length - offset, CHUNK_SIZE - chunkLength);
+      System.arraycopy(data, offset, chunk, 8 + chunkLength, length);
+      chunkLength += length;
+      offset += length;
+      if (chunkLength == CHUNK_SIZE) {
+        writeChunk(IDAT);
+      }
+    }
+  }
+
+  /**
+   * 从空的字典开始压缩 count 个 Up 全 0 行，以 SYNC_FLUSH 结束；不引用之前的内容，可以插入到任何字节边界
+   */
+  private byte[] compressUpRows(int count) {
+    if (count == 0) {
+      return new byte[0];
+    }
+    Deflater deflater = blockDeflater;
+    deflater.reset();
+    byte[] row = new byte[lineLength];
+    row[0] = FILTER_UP;
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    byte[] buffer = new byte[1024];
+    for (int i = 0; i < count; i++) {
+      deflater.setInput(row);
+      while (!deflater.needsInput()) {
+        result.write(buffer, 0, deflater.deflate(buffer, 0, buffer.length, Deflater.NO_FLUSH));
+      }
+    }
+    int length;
+    do {
+      length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+      result.write(buffer, 0, length);
+    } while (length == buffer.length);
+    return result.toByteArray();
+  }
+
+  private void updateAdler(byte[] data, int length) {
+    int a = adlerA;
+    int b = adlerB;
+    int i = 0;
+    while (i < length) {
+      int end = Math.min(length, i + ADLER_NMAX);
+      for (; i < end; i++) {
+        a += data[i] & 0xFF;
+        b += a;
+      }
+      a %= ADLER_BASE;
+      b %= ADLER_BASE;
+    }
+    adlerA = a;
+    adlerB = b;
+  }
+
+  // count 个 Up 全 0 行：过滤器字节之后的 0 只把 a 再累加到 b
+  private void updateAdlerUpRows(int count) {
+    for (int i = 0; i < count; i++) {
+      adlerA = (adlerA + FILTER_UP) % ADLER_BASE;
+      adlerB = (int) ((adlerB + (long) adlerA * lineLength) % ADLER_BASE);
+    }
+  }
+
+  private void writeChunk(int type) throws IOException {
+    putInt(chunk, 0, chunkLength);
+    putInt(chunk, 4, type);
+    crc.reset();
+    crc.update(chunk, 4, 4 + chunkLength);
+    putInt(chunk, 8 + chunkLength, (int) crc.getValue());
+    output(chunk, 12 + chunkLength);
+    chunkLength = 0;
+  }
+
+  private void output(byte[] data, int length) throws IOException {
+    if (out != null) {
+      out.write(data, 0, length);
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static void putInt(byte[] data, int offset, int value) {
+    data[offset] = (byte) (value >>> 24);
+    data[offset + 1] = (byte) (value >>> 16);
+    data[offset + 2] = (byte) (value >>> 8);
+    data[offset + 3] = (byte) value;
+  }
+
+}
@@ -10,9 +10,12 @@ public final class QRCode {
 	  private Version version;
 	  private int maskPattern;
 	  private ByteMatrix matrix;
+	  private MaskSelectionStrategy maskSelectionStrategy;
+	  private int maskPenalty;
 
 	  public QRCode() {
 	    maskPattern = -1;
+	    maskPenalty = -1;
 	  }
 
 	  public Mode getMode() {
@@ -35,6 +38,21 @@ public final class QRCode {
 	    return matrix;
 	  }
 
+	  /**
+	   * @return 选择掩码时使用的策略
+	   */
+	  public MaskSelectionStrategy getMaskSelectionStrategy() {
+	    return maskSelectionStrategy;
+	  }
+
+	  /**
+	   * @return 选择掩码时所选掩码的惩罚，含义取决于策略：{@link MaskSelectionStrategy#FULL} 为完整的
+	   *   4 条规则惩罚，SAMPLED、FAST 为各自的部分惩罚，FIXED 不计算惩罚，为 -1
+	   */
+	  public int getMaskPenalty() {
+	    return maskPenalty;
+	  }
+
 	  @Override
 	  public String toString() {
 	    StringBuilder result = new StringBuilder(200);
@@ -47,6 +65,10 @@ public final class QRCode {
 	    result.append(version);
 	    result.append("\n maskPattern: ");
 	    result.append(maskPattern);
+	    result.append("\n maskSelectionStrategy: ");
+	    result.append(maskSelectionStrategy);
+	    result.append("\n maskPenalty: ");
+	    result.append(maskPenalty);
 	    if (matrix == null) {
 	      result.append("\n matrix: null\n");
 	    } else {
@@ -77,6 +99,29 @@ public final class QRCode {
 	    matrix = value;
 	  }
 
+	  public void setMaskSelectionStrategy(MaskSelectionStrategy value) {
+	    maskSelectionStrategy = value;
+	  }
+
+	  public void setMaskPenalty(int value) {
+	    maskPenalty = value;
+	  }
+
+	  /**
+	   * @return 一个独立的副本，矩阵也被复制，不再与原对象共享存储
+	   */
+	  public QRCode copy() {
+	    QRCode copy = new QRCode();
+	    copy.mode = mode;
+	    copy.ecLevel = ecLevel;
+	    copy.version = version;
+	    copy.maskPattern = maskPattern;
+	    copy.maskSelectionStrategy = maskSelectionStrategy;
+	    copy.maskPenalty = maskPenalty;
+	    copy.matrix = matrix == null ? null : matrix.copy();
+	    return copy;
+	  }
+
 	  // Check if "mask_pattern" is valid.
 	  public static boolean isValidMaskPattern(int maskPattern) {
 	    return maskPattern >= 0 && maskPattern < NUM_MASK_PATTERNS;
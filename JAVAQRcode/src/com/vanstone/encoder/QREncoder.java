@@ -1,9 +1,10 @@
 package com.vanstone.encoder;
 
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 
@@ -23,15 +24,6 @@ public final class QREncoder {
 	  private QREncoder() {
 	  }
 
-	  // The mask penalty calculation is complicated.  See Table 21 of JISX0510:2004 (p.45) for details.
-	  // Basically it applies four rules and summate all penalties.
-	  private static int calculateMaskPenalty(ByteMatrix matrix) {
-	    return MaskUtil.applyMaskPenaltyRule1(matrix)
-	        + MaskUtil.applyMaskPenaltyRule2(matrix)
-	        + MaskUtil.applyMaskPenaltyRule3(matrix)
-	        + MaskUtil.applyMaskPenaltyRule4(matrix);
-	  }
-
 	  /**
 	   * @param content text to encode
 	   * @param ecLevel error correction level to use
@@ -53,86 +45,84 @@ public final class QREncoder {
 	  public static QRCode encode(String content,
 	                              ErrorCorrectionLevel ecLevel,
 	                              Map<EncodeHintType,?> hints) throws WriterException {
+	    return encode((CharSequence) content, ecLevel, hints);
+	  }
 
-	    // 字符编码，如果没有设置，采用默认ISO-8859-1
-	    String encoding = hints == null ? null : (String) hints.get(EncodeHintType.CHARACTER_SET);
-	    if (encoding == null) {
-	      encoding = DEFAULT_BYTE_MODE_ENCODING;
-	    }
-
-	    //步骤1，根据内容选择合适的模式
-	    Mode mode = chooseMode(content, encoding);
-
-	    //用来存储头部信息，例如模式，长度，ECI块等。
-	    BitArray headerBits = new BitArray();
-
-	    // 步骤2，如果可能，增加ECI块
-	    if (mode == Mode.BYTE && !DEFAULT_BYTE_MODE_ENCODING.equals(encoding)) {
-	      CharacterSetECI eci = CharacterSetECI.getCharacterSetECIByName(encoding);
-	      if (eci != null) {
-	        appendECI(eci, headerBits);
-	      }
-	    }
-
-	    // 文档24页example ECI+Mode
-	    appendModeInfo(mode, headerBits);
-
-	    
-	    // 将主要数据单独放在dataBits
-	    BitArray dataBits = new BitArray();
-	    //将主数据content根据不同的mode追加到dataBits中
-	    appendBytes(content, mode, dataBits, encoding);
-
-	    //选择版本，需要知道数据的量，这里先假设为最小版本。
-
-	    int provisionalBitsNeeded = headerBits.getSize()
-	        + mode.getCharacterCountBits(Version.getVersionForNumber(1))
-	        + dataBits.getSize();
-	    Version provisionalVersion = chooseVersion(provisionalBitsNeeded, ecLevel);
-
-
-	    int bitsNeeded = headerBits.getSize()
-	        + mode.getCharacterCountBits(provisionalVersion)
-	        + dataBits.getSize();
-	    Version version = chooseVersion(bitsNeeded, ecLevel);
-
-	    BitArray headerAndDataBits = new BitArray();
-	    headerAndDataBits.appendBitArray(headerBits);
-	    // 找到数据块的长度
-	    int numLetters = mode == Mode.BYTE ? dataBits.getSizeInBytes() : content.length();
-	    appendLengthInfo(numLetters, version, mode, headerAndDataBits);
-	    // 头部数据和主要数据封装
-	    headerAndDataBits.appendBitArray(dataBits);
-
-	    Version.ECBlocks ecBlocks = version.getECBlocksForLevel(ecLevel);
-	    int numDataBytes = version.getTotalCodewords() - ecBlocks.getTotalECCodewords();
-
-	    // 结束bits
-	    terminateBits(numDataBytes, headerAndDataBits);
-
-	    // 插入错误校验码数据，分块的数目可以参考38 table 9
-	    BitArray finalBits = interleaveWithECBytes(headerAndDataBits,
-	                                               version.getTotalCodewords(),
-	                                               numDataBytes,
-	                                               ecBlocks.getNumBlocks());
+	  /**
+	   * 与 {@link #encode(String, ErrorCorrectionLevel, Map)} 相同，但直接读取 {@link StringBuilder}、
+	   * {@link java.nio.CharBuffer} 等字符序列，不先转换成 String
+	   */
+	  public static QRCode encode(CharSequence content,
+	                              ErrorCorrectionLevel ecLevel,
+	                              Map<EncodeHintType,?> hints) throws WriterException {
+	    // 使用一个临时会话完成编码，返回的二维码不会再被其他调用复用，可以直接交给调用者
+	    return new QREncoderSession().encode(content, ecLevel, hints);
+	  }
 
-	    QRCode qrCode = new QRCode();
+	  /**
+	   * 以 BYTE 模式编码二进制数据 bytes[offset, offset + length)，不经过字符编码转换
+	   * @param hints 其他参数；设置了 {@link EncodeHintType#CHARACTER_SET} 时按其追加 ECI
+	   */
+	  public static QRCode encode(byte[] bytes,
+	                              int offset,
+	                              int length,
+	                              ErrorCorrectionLevel ecLevel,
+	                              Map<EncodeHintType,?> hints) throws WriterException {
+	    return new QREncoderSession().encode(bytes, offset, length, ecLevel, hints);
+	  }
 
-	    qrCode.setECLevel(ecLevel);
-	    qrCode.setMode(mode);
-	    qrCode.setVersion(version);
+	  /**
+	   * 以 BYTE 模式编码 bytes 中从 position 到 limit 的数据，直接读取（堆或直接缓冲区均可），
+	   * 不改变 bytes 的 position
+	   * @param hints 其他参数；设置了 {@link EncodeHintType#CHARACTER_SET} 时按其追加 ECI
+	   */
+	  public static QRCode encode(ByteBuffer bytes,
+	                              ErrorCorrectionLevel ecLevel,
+	                              Map<EncodeHintType,?> hints) throws WriterException {
+	    return new QREncoderSession().encode(bytes, ecLevel, hints);
+	  }
 
-	    //  选择 mask pattern 并设置
-	    int dimension = version.getDimensionForVersion();
-	    ByteMatrix matrix = new ByteMatrix(dimension, dimension);
-	    int maskPattern = chooseMaskPattern(finalBits, ecLevel, version, matrix);
-	    qrCode.setMaskPattern(maskPattern);
+	  /**
+	   * 以 GS1 格式编码已经按 AI 解析好的元素：以 FNC1（第一位置）开始，按混合模式分段，
+	   * AI 和数字数据用 NUMERIC 模式压缩，可变长度元素之后的分隔符在 ALPHANUMERIC 段中写为 '%'（数据中的 '%' 写为 "%%"）。
+	   * 不需要先拼接成字符串；字符都属于 ISO-8859-1，不追加 ECI。
+	   * @param elements 按顺序排列的元素，至少一个
+	   * @param ecLevel 错误水平
+	   * @param hints 其他参数；忽略 {@link EncodeHintType#CHARACTER_SET}
+	   * @throws WriterException 如果版本 40 也放不下
+	   */
+	  public static QRCode encodeGS1(List<GS1Element> elements,
+	                                 ErrorCorrectionLevel ecLevel,
+	                                 Map<EncodeHintType,?> hints) throws WriterException {
+	    return new QREncoderSession().encodeGS1(elements, ecLevel, hints);
+	  }
 
-	    // 构建矩阵
-	    MatrixUtil.buildMatrix(finalBits, ecLevel, version, maskPattern, matrix);
-	    qrCode.setMatrix(matrix);
+	  /**
+	   * @see #encodeStructuredAppend(CharSequence, ErrorCorrectionLevel, int, Map)
+	   */
+	  public static List<QRCode> encodeStructuredAppend(CharSequence content,
+	                                                    ErrorCorrectionLevel ecLevel,
+	                                                    Map<EncodeHintType,?> hints) throws WriterException {
+	    return encodeStructuredAppend(content, ecLevel, 40, hints);
+	  }
 
-	    return qrCode;
+	  /**
+	   * 以 Structured Append 把内容分成最多 16 个符号，各符号的版本都不超过 maxVersion。
+	   * 在符号数最少的前提下使最大的版本尽量小，并使各符号大小均衡。一个符号就放得下时返回
+	   * 与 {@link #encode(CharSequence, ErrorCorrectionLevel, Map)} 相同的单个符号（不加 Structured Append 头）。
+	   * 设置了 {@link EncodeHintType#PARALLEL_EXECUTOR} 时各符号并发编码。
+	   * @param content 待编码的字符串
+	   * @param ecLevel 错误水平
+	   * @param maxVersion 每个符号的最大版本，1 到 40
+	   * @param hints 其他参数，例如字符编码等
+	   * @return 按符号位置排列的二维码
+	   * @throws WriterException 如果 16 个符号也放不下
+	   */
+	  public static List<QRCode> encodeStructuredAppend(CharSequence content,
+	                                                    ErrorCorrectionLevel ecLevel,
+	                                                    int maxVersion,
+	                                                    Map<EncodeHintType,?> hints) throws WriterException {
+	    return StructuredAppend.encode(content, ecLevel, maxVersion, hints);
 	  }
 
 	  /**
@@ -199,48 +189,93 @@ public final class QREncoder {
 	    return true;
 	  }
 
-	  private static int chooseMaskPattern(BitArray bits,
-	                                       ErrorCorrectionLevel ecLevel,
-	                                       Version version,
-	                                       ByteMatrix matrix) throws WriterException {
-
-	    int minPenalty = Integer.MAX_VALUE;  // Lower penalty is better.
-	    int bestMaskPattern = -1;
-	    // We try all mask patterns to choose the best one.
-	    for (int maskPattern = 0; maskPattern < QRCode.NUM_MASK_PATTERNS; maskPattern++) {
-	      MatrixUtil.buildMatrix(bits, ecLevel, version, maskPattern, matrix);
-	      int penalty = calculateMaskPenalty(matrix);
-	      if (penalty < minPenalty) {
-	        minPenalty = penalty;
-	        bestMaskPattern = maskPattern;
+	  /**
+	   * 按 strategy 选择惩罚最小的掩码，并把结果直接留在 matrix 中（已经应用该掩码和对应的格式信息），
+	   * 调用者不需要再构建矩阵。
+	   * <p>
+	   * 矩阵只构建一次（不加掩码）并压缩进 unmasked，每个候选掩码由它与缓存的 {@link MaskBitplane} 按字异或得到，
+	   * 再写入该掩码的格式信息，评分过程中不修改 matrix。
+	   * {@link MaskSelectionStrategy#FULL} 先算出各掩码代价最低的规则4与规则2惩罚作为估计，按估计从小到大评估
+	   * 其余规则，尽早得到较紧的上界，累计惩罚超过上界的掩码提前放弃。结果与依次计算全部惩罚相同。
+	   * </p>
+	   * @param unmasked 与版本维数相同的工作区，用来保存不加掩码的矩阵
+	   * @param penaltyCalculators 每个掩码一个、与版本维数相同的惩罚计算工作区
+	   * @param estimates 长度为 {@link QRCode#NUM_MASK_PATTERNS} 的工作区，保存各掩码的估计
+	   * @param order 长度为 {@link QRCode#NUM_MASK_PATTERNS} 的工作区，保存按估计排序的掩码编号
+	   * @param bestKey 保存上界的工作区，调用时的值被覆盖
+	   * @param strategy FULL、SAMPLED 或 FAST；FIXED 不需要选择
+	   * @return 所选掩码的 {@link BitPackedMaskPenalty#maskKey(int, int)}：惩罚在高位，掩码编号在低 3 位
+	   */
+	  static long chooseMaskPattern(BitWriter bits,
+	                                ErrorCorrectionLevel ecLevel,
+	                                Version version,
+	                                ByteMatrix matrix,
+	                                BitPackedMaskPenalty unmasked,
+	                                BitPackedMaskPenalty[] penaltyCalculators,
+	                                int[] estimates,
+	                                int[] order,
+	                                AtomicLong bestKey,
+	                                MaskSelectionStrategy strategy) throws WriterException {
+	    MatrixUtil.buildUnmaskedMatrix(bits, version, matrix);
+	    unmasked.setMatrix(matrix);
+
+	    long bestMaskKey;
+	    if (strategy.getType() == MaskSelectionStrategy.Type.FULL) {
+	      bestMaskKey = chooseMaskPatternFully(ecLevel, version, unmasked, penaltyCalculators,
+	          estimates, order, bestKey);
+	    } else {
+	      // SAMPLED 与 FAST 的计算量小，不做分支限界，逐个比较
+	      BitPackedMaskPenalty candidate = penaltyCalculators[0];
+	      bestMaskKey = Long.MAX_VALUE;
+	      for (int maskPattern = 0; maskPattern < QRCode.NUM_MASK_PATTERNS; maskPattern++) {
+	        candidate.setMaskedMatrix(unmasked, MaskBitplane.forVersion(version, maskPattern));
+	        candidate.setTypeInfo(MatrixUtil.makeTypeInfo(ecLevel, maskPattern));
+	        int penalty = strategy.getType() == MaskSelectionStrategy.Type.SAMPLED
+	            ? candidate.calculateSampledPenalty(MaskSelectionStrategy.SAMPLE_STEP)
+	            : candidate.calculateFastPenalty();
+	        bestMaskKey = Math.min(bestMaskKey, BitPackedMaskPenalty.maskKey(penalty, maskPattern));
 	      }
 	    }
-	    return bestMaskPattern;
+	    int bestMaskPattern = (int) (bestMaskKey & 0x07);
+	    // 提交胜出的掩码
+	    MatrixUtil.applyDataMask(bestMaskPattern, version, matrix);
+	    MatrixUtil.embedTypeInfo(ecLevel, bestMaskPattern, matrix);
+	    return bestMaskKey;
 	  }
 
-	  private static Version chooseVersion(int numInputBits, ErrorCorrectionLevel ecLevel) throws WriterException {
-	    // In the following comments, we use numbers of Version 7-H.
-	    for (int versionNum = 1; versionNum <= 40; versionNum++) {
-	      Version version = Version.getVersionForNumber(versionNum);
-	      // numBytes = 196
-	      int numBytes = version.getTotalCodewords();
-	      // getNumECBytes = 130
-	      Version.ECBlocks ecBlocks = version.getECBlocksForLevel(ecLevel);
-	      int numEcBytes = ecBlocks.getTotalECCodewords();
-	      // getNumDataBytes = 196 - 130 = 66
-	      int numDataBytes = numBytes - numEcBytes;
-	      int totalInputBytes = (numInputBits + 7) / 8;
-	      if (numDataBytes >= totalInputBytes) {
-	        return version;
+	  private static long chooseMaskPatternFully(ErrorCorrectionLevel ecLevel,
+	                                             Version version,
+	                                             BitPackedMaskPenalty unmasked,
+	                                             BitPackedMaskPenalty[] penaltyCalculators,
+	                                             int[] estimates,
+	                                             int[] order,
+	                                             AtomicLong bestKey) throws WriterException {
+	    for (int maskPattern = 0; maskPattern < QRCode.NUM_MASK_PATTERNS; maskPattern++) {
+	      BitPackedMaskPenalty candidate = penaltyCalculators[maskPattern];
+	      candidate.setMaskedMatrix(unmasked, MaskBitplane.forVersion(version, maskPattern));
+	      candidate.setTypeInfo(MatrixUtil.makeTypeInfo(ecLevel, maskPattern));
+	      estimates[maskPattern] = candidate.applyRule4() + candidate.applyRule2();
+	      // 按估计插入排序，相同时保持编号顺序
+	      int i = maskPattern;
+	      while (i > 0 && estimates[order[i - 1]] > estimates[maskPattern]) {
+	        order[i] = order[i - 1];
+	        i--;
 	      }
+	      order[i] = maskPattern;
 	    }
-	    throw new WriterException("Data too big");
+
+	    bestKey.set(Long.MAX_VALUE);  // Lower penalty is better.
+	    for (int maskPattern : order) {
+	      penaltyCalculators[maskPattern].calculatePenalty(
+	          maskPattern, estimates[maskPattern], bestKey);
+	    }
+	    return bestKey.get();
 	  }
 
 	  /**
 	   * Terminate bits as described in 8.4.8 and 8.4.9 of JISX0510:2004 (p.24).
 	   */
-	  static void terminateBits(int numDataBytes, BitArray bits) throws WriterException {
+	  static void terminateBits(int numDataBytes, BitWriter bits) throws WriterException {
 	    int capacity = numDataBytes * 8;
 	    if (bits.getSize() > capacity) {
 	      throw new WriterException("data bits cannot fit in the QR Code" + bits.getSize() + " > " +
@@ -324,102 +359,22 @@ public final class QREncoder {
 	    }
 	  }
 
-	  /**
-	   * 利用RS编码插入错误检测码
-	   */
-	  static BitArray interleaveWithECBytes(BitArray bits,
-	                                        int numTotalBytes,
-	                                        int numDataBytes,
-	                                        int numRSBlocks) throws WriterException {
-
-	    if (bits.getSizeInBytes() != numDataBytes) {
-	      throw new WriterException("Number of bits and data bytes does not match");
-	    }
-
-	    //步骤1.划分数据成块，并生成块的错误检测码。存储块和块检测码到新的块
-	    int dataBytesOffset = 0;
-	    int maxNumDataBytes = 0;
-	    int maxNumEcBytes = 0;
-
-	    //rs块的数目是已知的，通过文档可以知道
-	    Collection<BlockPair> blocks = new ArrayList<>(numRSBlocks);
-
-	    for (int i = 0; i < numRSBlocks; ++i) {
-	      int[] numDataBytesInBlock = new int[1];
-	      int[] numEcBytesInBlock = new int[1];
-	      getNumDataBytesAndNumECBytesForBlockID(
-	          numTotalBytes, numDataBytes, numRSBlocks, i,
-	          numDataBytesInBlock, numEcBytesInBlock);
-
-	      int size = numDataBytesInBlock[0];
-	      byte[] dataBytes = new byte[size];
-	      bits.toBytes(8*dataBytesOffset, dataBytes, 0, size);
-	      byte[] ecBytes = generateECBytes(dataBytes, numEcBytesInBlock[0]);
-	      blocks.add(new BlockPair(dataBytes, ecBytes));
-
-	      maxNumDataBytes = Math.max(maxNumDataBytes, size);
-	      maxNumEcBytes = Math.max(maxNumEcBytes, ecBytes.length);
-	      dataBytesOffset += numDataBytesInBlock[0];
-	    }
-	    if (numDataBytes != dataBytesOffset) {
-	      throw new WriterException("Data bytes does not match offset");
-	    }
-
-	    BitArray result = new BitArray();
-
-	    // 首先放入数据块
-	    for (int i = 0; i < maxNumDataBytes; ++i) {
-	      for (BlockPair block : blocks) {
-	        byte[] dataBytes = block.getDataBytes();
-	        if (i < dataBytes.length) {
-	          result.appendBits(dataBytes[i], 8);
-	        }
-	      }
-	    }
-	    // 其次，放入错误检测码块
-	    for (int i = 0; i < maxNumEcBytes; ++i) {
-	      for (BlockPair block : blocks) {
-	        byte[] ecBytes = block.getErrorCorrectionBytes();
-	        if (i < ecBytes.length) {
-	          result.appendBits(ecBytes[i], 8);
-	        }
-	      }
-	    }
-	    if (numTotalBytes != result.getSizeInBytes()) {  // Should be same.
-	      throw new WriterException("Interleaving error: " + numTotalBytes + " and " +
-	          result.getSizeInBytes() + " differ.");
-	    }
-
-	    return result;
-	  }
-
-	  static byte[] generateECBytes(byte[] dataBytes, int numEcBytesInBlock) {
-	    int numDataBytes = dataBytes.length;
-	    int[] toEncode = new int[numDataBytes + numEcBytesInBlock];
-	    for (int i = 0; i < numDataBytes; i++) {
-	      toEncode[i] = dataBytes[i] & 0xFF;
-	    }
-	    new ReedSolomonEncoder(GenericGF.QR_CODE_FIELD_256).encode(toEncode, numEcBytesInBlock);
-
-	    byte[] ecBytes = new byte[numEcBytesInBlock];
-	    for (int i = 0; i < numEcBytesInBlock; i++) {
-	      ecBytes[i] = (byte) toEncode[numDataBytes + i];
-	    }
-	    return ecBytes;
-	  }
-
 	  /**
 	   * Append mode info. On success, store the result in "bits".
+	   * HANZI 模式之后还有 4 位子集指示符，见 {@link CapacityPlanner#getModeIndicatorBits(Mode)}
 	   */
-	  static void appendModeInfo(Mode mode, BitArray bits) {
+	  static void appendModeInfo(Mode mode, BitWriter bits) {
 	    bits.appendBits(mode.getBits(), 4);
+	    if (mode == Mode.HANZI) {
+	      bits.appendBits(HanziTable.GB2312_SUBSET, 4);
+	    }
 	  }
 
 
 	  /**
 	   * Append length info. On success, store the result in "bits".
 	   */
-	  static void appendLengthInfo(int numLetters, Version version, Mode mode, BitArray bits) throws WriterException {
+	  static void appendLengthInfo(int numLetters, Version version, Mode mode, BitWriter bits) throws WriterException {
 	    int numBits = mode.getCharacterCountBits(version);
 	    if (numLetters >= (1 << numBits)) {
 	      throw new WriterException(numLetters + " is bigger than " + ((1 << numBits) - 1));
@@ -428,43 +383,48 @@ public final class QREncoder {
 	  }
 
 	  /**
-	   * 以不同的mode追加bytes，如果成功，则存储结果到bits
-	   * 
+	   * 以不同的mode追加已经扫描、转码过的内容，结果存储到bits
 	   */
-	  static void appendBytes(String content,
-	                          Mode mode,
-	                          BitArray bits,
-	                          String encoding) throws WriterException {
+	  static void appendBytes(ContentAnalysis content, Mode mode, BitWriter bits) throws WriterException {
 	    switch (mode) {
 	      case NUMERIC:
-	        appendNumericBytes(content, bits);
+	        appendNumericBytes(content.getContent(), bits);
 	        break;
 	      case ALPHANUMERIC:
-	        appendAlphanumericBytes(content, bits);
+	        appendAlphanumericBytes(content.getContent(), bits);
 	        break;
 	      case BYTE:
-	        append8BitBytes(content, bits, encoding);
+	        bits.appendBytes(content.getBytes(), 0, content.getNumBytes());
 	        break;
 	      case KANJI:
-	        appendKanjiBytes(content, bits);
+	        appendKanjiBytes(content.getBytes(), 0, content.getNumBytes(), bits);
+	        break;
+	      case HANZI:
+	        appendHanziBytes(content.getContent(), bits);
 	        break;
 	      default:
 	        throw new WriterException("Invalid mode: " + mode);
 	    }
 	  }
 
-	  static void appendNumericBytes(CharSequence content, BitArray bits) {
-	    int length = content.length();
-	    int i = 0;
-	    while (i < length) {
+	  static void appendNumericBytes(CharSequence content, BitWriter bits) {
+	    appendNumericBytes(content, 0, content.length(), bits);
+	  }
+
+	  /**
+	   * 追加 content 中 [start, end) 的数字，不创建子串
+	   */
+	  static void appendNumericBytes(CharSequence content, int start, int end, BitWriter bits) {
+	    int i = start;
+	    while (i < end) {
 	      int num1 = content.charAt(i) - '0';
-	      if (i + 2 < length) {
+	      if (i + 2 < end) {
 	        // Encode three numeric letters in ten bits.
 	        int num2 = content.charAt(i + 1) - '0';
 	        int num3 = content.charAt(i + 2) - '0';
 	        bits.appendBits(num1 * 100 + num2 * 10 + num3, 10);
 	        i += 3;
-	      } else if (i + 1 < length) {
+	      } else if (i + 1 < end) {
 	        // Encode two numeric letters in seven bits.
 	        int num2 = content.charAt(i + 1) - '0';
 	        bits.appendBits(num1 * 10 + num2, 7);
@@ -477,15 +437,22 @@ public final class QREncoder {
 	    }
 	  }
 
-	  static void appendAlphanumericBytes(CharSequence content, BitArray bits) throws WriterException {
-	    int length = content.length();
-	    int i = 0;
-	    while (i < length) {
+	  static void appendAlphanumericBytes(CharSequence content, BitWriter bits) throws WriterException {
+	    appendAlphanumericBytes(content, 0, content.length(), bits);
+	  }
+
+	  /**
+	   * 追加 content 中 [start, end) 的字母数字字符，不创建子串
+	   */
+	  static void appendAlphanumericBytes(CharSequence content, int start, int end, BitWriter bits)
+	      throws WriterException {
+	    int i = start;
+	    while (i < end) {
 	      int code1 = getAlphanumericCode(content.charAt(i));
 	      if (code1 == -1) {
 	        throw new WriterException();
 	      }
-	      if (i + 1 < length) {
+	      if (i + 1 < end) {
 	        int code2 = getAlphanumericCode(content.charAt(i + 1));
 	        if (code2 == -1) {
 	          throw new WriterException();
@@ -501,28 +468,54 @@ public final class QREncoder {
 	    }
 	  }
 
-	  static void append8BitBytes(String content, BitArray bits, String encoding)
+	  /**
+	   * 追加 GS1 内容中 [start, end) 的字母数字字符：分隔符 GS（即 FNC1）写为 '%'，'%' 本身写为 "%%"
+	   */
+	  static void appendGS1AlphanumericBytes(CharSequence content, int start, int end, BitWriter bits)
 	      throws WriterException {
-	    byte[] bytes;
-	    try {
-	      bytes = content.getBytes(encoding);
-	    } catch (UnsupportedEncodingException uee) {
-	      throw new WriterException(uee);
+	    int percentCode = getAlphanumericCode('%');
+	    // 等待与下一个字符组成一对的代码
+	    int pending = -1;
+	    for (int i = start; i < end; i++) {
+	      char c = content.charAt(i);
+	      int code;
+	      if (c == GS1Element.GROUP_SEPARATOR) {
+	        code = percentCode;
+	      } else {
+	        code = getAlphanumericCode(c);
+	        if (code == -1) {
+	          throw new WriterException();
+	        }
+	        if (c == '%') {
+	          if (pending == -1) {
+	            pending = percentCode;
+	          } else {
+	            bits.appendBits(pending * 45 + percentCode, 11);
+	            pending = -1;
+	          }
+	        }
+	      }
+	      if (pending == -1) {
+	        pending = code;
+	      } else {
+	        bits.appendBits(pending * 45 + code, 11);
+	        pending = -1;
+	      }
 	    }
-	    for (byte b : bytes) {
-	      bits.appendBits(b, 8);
+	    if (pending != -1) {
+	      bits.appendBits(pending, 6);
 	    }
 	  }
 
-	  static void appendKanjiBytes(String content, BitArray bits) throws WriterException {
-	    byte[] bytes;
-	    try {
-	      bytes = content.getBytes("Shift_JIS");
-	    } catch (UnsupportedEncodingException uee) {
-	      throw new WriterException(uee);
+	  /**
+	   * 追加 Shift_JIS 字节 bytes[offset, offset + length) 表示的汉字，每个13位
+	   */
+	  static void appendKanjiBytes(byte[] bytes, int offset, int length, BitWriter bits)
+	      throws WriterException {
+	    if (length % 2 != 0) {
+	      throw new WriterException("Invalid byte sequence");
 	    }
-	    int length = bytes.length;
-	    for (int i = 0; i < length; i += 2) {
+	    for (int i = offset; i < offset + length; i += 2) {
 	      int byte1 = bytes[i] & 0xFF;
 	      int byte2 = bytes[i + 1] & 0xFF;
 	      int code = (byte1 << 8) | byte2;
@@ -540,7 +533,25 @@ public final class QREncoder {
 	    }
 	  }
 
-	  private static void appendECI(CharacterSetECI eci, BitArray bits) {
+	  static void appendHanziBytes(CharSequence content, BitWriter bits) throws WriterException {
+	    appendHanziBytes(content, 0, content.length(), bits);
+	  }
+
+	  /**
+	   * 追加 content 中 [start, end) 的 GB2312 字符，每个13位（GB/T 18284）；与内容的字符编码无关
+	   */
+	  static void appendHanziBytes(CharSequence content, int start, int end, BitWriter bits)
+	      throws WriterException {
+	    for (int i = start; i < end; i++) {
+	      int value = HanziTable.getValue(content.charAt(i));
+	      if (value == -1) {
+	        throw new WriterException("Invalid Hanzi character: " + content.charAt(i));
+	      }
+	      bits.appendBits(value, 13);
+	    }
+	  }
+
+	  static void appendECI(CharacterSetECI eci, BitWriter bits) {
 	    bits.appendBits(Mode.ECI.getBits(), 4);
 	    bits.appendBits(eci.getValue(), 8);
 	  }
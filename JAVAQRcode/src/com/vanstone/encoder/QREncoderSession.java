@@ -0,0 +1,566 @@
+package com.vanstone.encoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 可重复使用的二维码编码会话。
+ * <p>
+ * 与 {@link QREncoder#encode(String, ErrorCorrectionLevel, Map)} 的流程完全相同，但所有中间缓冲区
+ * （bits 数组、数据块与纠错码块、矩阵以及返回的 {@link QRCode}）都由会话持有，
+ * 按照见过的最大版本分配，之后的调用直接复用。
+ * </p>
+ * <p>
+ * 稳态：对同一版本和纠错等级连续编码 NUMERIC、ALPHANUMERIC 或 ISO-8859-1、UTF-8 的 BYTE 内容时，
+ * 如果分段位数的下界（{@link MixedModeSegmenter#mayFitSmallerVersion}）表明混合模式分段不可能得到更小的版本，
+ * 整个编码过程不分配任何对象（纠错码由 {@link QRReedSolomon} 直接写入会话的数组）；否则求解分段时
+ * 分配动态规划数组和数据段列表。
+ * 其他字符集复用会话的编码器和字节缓冲区，每次只分配一个 CharBuffer。版本改变时矩阵会重新分配一次。
+ * </p>
+ * <p>
+ * {@link #encode} 返回的 {@link QRCode} 属于会话，下一次调用时会被覆盖，调用者只能"借用"；
+ * 需要长期保存时使用 {@link #encodeCopy} 或 {@link QRCode#copy()}。会话不是线程安全的，
+ * 每个线程应使用自己的会话。
+ * </p>
+ * <p>
+ * 除 String 外也可以直接编码 {@link CharSequence}，以及 byte[]、{@link ByteBuffer} 中的二进制数据；
+ * 二进制数据按 BYTE 模式原样写入，不经过字符编码转换，也不复制到中间数组。
+ * </p>
+ * <p>
+ * {@link #encodeGS1} 直接读取 {@link GS1Element} 列表中的数据，不为每个标签拼接字符串。
+ * </p>
+ * <p>
+ * 通过 {@link EncodeHintType#PARALLEL_EXECUTOR} 提供线程池后，较大版本的二维码会在该线程池中并发计算
+ * 各 RS 块和 8 个掩码候选（每个候选使用会话持有的独立工作区），用于降低单次请求的延迟。
+ * </p>
+ */
+public final class QREncoderSession {
+
+  /** 未设置 {@link EncodeHintType#PARALLEL_MIN_VERSION} 时启用并行计算的最小版本 */
+  public static final int DEFAULT_PARALLEL_MIN_VERSION = 25;
+
+  private final BitWriter headerBits = new BitWriter();
+  private final BitWriter dataBits = new BitWriter();
+  private final BitWriter headerAndDataBits = new BitWriter();
+  private final BitWriter finalBits = new BitWriter();
+  private final int[] numDataBytesInBlock = new int[1];
+  private final int[] numEcBytesInBlock = new int[1];
+  private final QRCode qrCode = new QRCode();
+  private final ContentAnalysis analysis = new ContentAnalysis();
+  // 选择掩码时的估计、评估顺序和共享的上界
+  private final int[] maskEstimates = new int[QRCode.NUM_MASK_PATTERNS];
+  private final int[] maskOrder = new int[QRCode.NUM_MASK_PATTERNS];
+  private final AtomicLong bestMaskKey = new AtomicLong();
+
+  private byte[] ecCodewords = new byte[0];
+  private ByteMatrix matrix;
+  private BitPackedMaskPenalty unmaskedPenalty;
+  private BitPackedMaskPenalty[] penaltyCalculators;
+
+  /**
+   * @see #encode(String, ErrorCorrectionLevel, Map)
+   */
+  public QRCode encode(String content, ErrorCorrectionLevel ecLevel) throws WriterException {
+    return encode(content, ecLevel, null);
+  }
+
+  /**
+   * 编码给定的内容进二维码，返回的对象在下一次调用前有效
+   * @param content 待编码的字符串
+   * @param ecLevel 错误水平
+   * @param hints 其他参数，例如字符编码等
+   * @return 属于本会话的二维码对象
+   * @throws WriterException
+   */
+  public QRCode encode(String content,
+                       ErrorCorrectionLevel ecLevel,
+                       Map<EncodeHintType,?> hints) throws WriterException {
+    return encode((CharSequence) content, ecLevel, hints);
+  }
+
+  /**
+   * 与 {@link #encode(String, ErrorCorrectionLevel, Map)} 相同，但直接读取字符序列，不先转换成 String
+   */
+  public QRCode encode(CharSequence content,
+                       ErrorCorrectionLevel ecLevel,
+                       Map<EncodeHintType,?> hints) throws WriterException {
+
+    if (ContentAnalysis.useGS1(hints)) {
+      return encodeGS1(content, ecLevel, hints);
+    }
+    CharacterEncoding encoding = getEncoding(hints);
+
+    // 只扫描、转码一次，之后的各步骤都使用这个结果
+    analysis.reset(content, encoding, ContentAnalysis.useHanzi(encoding, hints));
+    Mode mode = analysis.getMode();
+
+    headerBits.reset();
+    if (mode == Mode.BYTE && !encoding.isDefault()) {
+      CharacterSetECI eci = encoding.getECI();
+      if (eci != null) {
+        QREncoder.appendECI(eci, headerBits);
+      }
+    }
+    QREncoder.appendModeInfo(mode, headerBits);
+
+    dataBits.reset();
+    QREncoder.appendBytes(analysis, mode, dataBits);
+
+    // 单一模式放不下时为 null，下面的分段编码可能放得下
+    Version version = CapacityPlanner.chooseSingleModeVersion(
+        headerBits.getSize(), mode, dataBits.getSize(), ecLevel);
+
+    // 混合模式分段只在能得到更小的版本时使用，其余情况与单一模式的结果完全相同；
+    // 先用不分配对象的下界排除不可能更小的内容，只有可能更小时才求解分段
+    MixedModeSegmenter segmenter = null;
+    if (MixedModeSegmenter.mayBeShorter(analysis, mode)
+        && (version == null || MixedModeSegmenter.mayFitSmallerVersion(analysis, ecLevel, version))) {
+      segmenter = MixedModeSegmenter.segment(analysis, ecLevel, 0);
+      if (segmenter != null && version != null
+          && segmenter.getVersion().getVersionNumber() >= version.getVersionNumber()) {
+        segmenter = null;
+      }
+    }
+
+    headerAndDataBits.reset();
+    if (segmenter != null) {
+      version = segmenter.getVersion();
+      // 二维码对象记录第一个数据段的模式
+      mode = segmenter.getSegments().get(0).getMode();
+      segmenter.appendTo(headerAndDataBits);
+    } else if (version == null) {
+      throw new WriterException("Data too big");
+    } else {
+      headerAndDataBits.appendBitWriter(headerBits);
+      int numLetters = mode == Mode.BYTE ? dataBits.getSizeInBytes() : content.length();
+      QREncoder.appendLengthInfo(numLetters, version, mode, headerAndDataBits);
+      headerAndDataBits.appendBitWriter(dataBits);
+    }
+
+    return encodeDataBits(mode, version, ecLevel, hints);
+  }
+
+  /**
+   * 以 BYTE 模式编码二进制数据 bytes[offset, offset + length)，返回的对象在下一次调用前有效
+   * @param hints 其他参数；设置了 {@link EncodeHintType#CHARACTER_SET} 时按其追加 ECI
+   */
+  public QRCode encode(byte[] bytes,
+                       int offset,
+                       int length,
+                       ErrorCorrectionLevel ecLevel,
+                       Map<EncodeHintType,?> hints) throws WriterException {
+    if (offset < 0 || length < 0 || length > bytes.length - offset) {
+      throw new IllegalArgumentException("Invalid offset or length");
+    }
+    dataBits.reset();
+    dataBits.appendBytes(bytes, offset, length);
+    return encodeBinary(ecLevel, hints);
+  }
+
+  /**
+   * 以 BYTE 模式编码 bytes 中从 position 到 limit 的数据，直接读取，不改变 bytes 的 position；
+   * 返回的对象在下一次调用前有效
+   * @param hints 其他参数；设置了 {@link EncodeHintType#CHARACTER_SET} 时按其追加 ECI
+   */
+  public QRCode encode(ByteBuffer bytes,
+                       ErrorCorrectionLevel ecLevel,
+                       Map<EncodeHintType,?> hints) throws WriterException {
+    dataBits.reset();
+    dataBits.appendBytes(bytes);
+    return encodeBinary(ecLevel, hints);
+  }
+
+  /**
+   * 以 GS1 格式编码已经解析好的元素，不需要先拼接成字符串；返回的对象在下一次调用前有效
+   *
+   * @see QREncoder#encodeGS1(List, ErrorCorrectionLevel, Map)
+   */
+  public QRCode encodeGS1(List<GS1Element> elements,
+                          ErrorCorrectionLevel ecLevel,
+                          Map<EncodeHintType,?> hints) throws WriterException {
+    return encodeGS1(new GS1ElementString(elements), ecLevel, hints);
+  }
+
+  /**
+   * 以 FNC1（第一位置）开始，按混合模式分段编码 GS1 元素串
+   */
+  private QRCode encodeGS1(CharSequence content,
+                           ErrorCorrectionLevel ecLevel,
+                           Map<EncodeHintType,?> hints) throws WriterException {
+    // GS1 数据只有 ASCII 字符，不需要 ECI
+    analysis.reset(content, CharacterEncoding.forName(QREncoder.DEFAULT_BYTE_MODE_ENCODING), false, true);
+    MixedModeSegmenter segmenter = MixedModeSegmenter.segment(analysis, ecLevel, 4);
+    if (segmenter == null) {
+      throw new WriterException("Data too big");
+    }
+    headerAndDataBits.reset();
+    QREncoder.appendModeInfo(Mode.FNC1_FIRST_POSITION, headerAndDataBits);
+    segmenter.appendTo(headerAndDataBits);
+    // 二维码对象记录第一个数据段的模式
+    return encodeDataBits(segmenter.getSegments().get(0).getMode(), segmenter.getVersion(), ecLevel, hints);
+  }
+
+  /**
+   * 编码 Structured Append 的第 index 个符号（共 total 个），数据为 segmenter 的各数据段
+   *
+   * @param parity 整个内容所有数据字节的异或
+   */
+  QRCode encodeStructuredAppendPart(MixedModeSegmenter segmenter,
+                                    int index,
+                                    int total,
+                                    int parity,
+                                    ErrorCorrectionLevel ecLevel,
+                                    Map<EncodeHintType,?> hints) throws WriterException {
+    headerAndDataBits.reset();
+    QREncoder.appendModeInfo(Mode.STRUCTURED_APPEND, headerAndDataBits);
+    headerAndDataBits.appendBits(index, 4);
+    headerAndDataBits.appendBits(total - 1, 4);
+    headerAndDataBits.appendBits(parity, 8);
+    segmenter.appendTo(headerAndDataBits);
+    // 二维码对象记录第一个数据段的模式
+    return encodeDataBits(segmenter.getSegments().get(0).getMode(), segmenter.getVersion(), ecLevel, hints);
+  }
+
+  private static CharacterEncoding getEncoding(Map<EncodeHintType,?> hints) throws WriterException {
+    String encodingName = hints == null ? null : (String) hints.get(EncodeHintType.CHARACTER_SET);
+    if (encodingName == null) {
+      encodingName = QREncoder.DEFAULT_BYTE_MODE_ENCODING;
+    }
+    return CharacterEncoding.forName(encodingName);
+  }
+
+  /**
+   * dataBits 中已经是 BYTE 模式的数据，追加 ECI、模式指示符和字符计数后编码
+   */
+  private QRCode encodeBinary(ErrorCorrectionLevel ecLevel,
+                              Map<EncodeHintType,?> hints) throws WriterException {
+    headerBits.reset();
+    String encodingName = hints == null ? null : (String) hints.get(EncodeHintType.CHARACTER_SET);
+    if (encodingName != null) {
+      CharacterEncoding encoding = CharacterEncoding.forName(encodingName);
+      if (!encoding.isDefault() && encoding.getECI() != null) {
+        QREncoder.appendECI(encoding.getECI(), headerBits);
+      }
+    }
+    QREncoder.appendModeInfo(Mode.BYTE, headerBits);
+
+    Version version = CapacityPlanner.chooseSingleModeVersion(
+        headerBits.getSize(), Mode.BYTE, dataBits.getSize(), ecLevel);
+    if (version == null) {
+      throw new WriterException("Data too big");
+    }
+
+    headerAndDataBits.reset();
+    headerAndDataBits.appendBitWriter(headerBits);
+    QREncoder.appendLengthInfo(dataBits.getSizeInBytes(), version, Mode.BYTE, headerAndDataBits);
+    headerAndDataBits.appendBitWriter(dataBits);
+
+    return encodeDataBits(Mode.BYTE, version, ecLevel, hints);
+  }
+
+  /**
+   * headerAndDataBits 中已经是完整的数据段，补齐、计算纠错码并构建矩阵
+   */
+  private QRCode encodeDataBits(Mode mode,
+                                Version version,
+                                ErrorCorrectionLevel ecLevel,
+                                Map<EncodeHintType,?> hints) throws WriterException {
+    Version.ECBlocks ecBlocks = version.getECBlocksForLevel(ecLevel);
+    int numDataBytes = version.getTotalCodewords() - ecBlocks.getTotalECCodewords();
+
+    QREncoder.terminateBits(numDataBytes, headerAndDataBits);
+
+    ExecutorService executor = parallelExecutor(hints, version);
+
+    interleaveWithECBytes(version.getTotalCodewords(), numDataBytes, ecBlocks.getNumBlocks(), executor);
+
+    int dimension = version.getDimensionForVersion();
+    if (matrix == null || matrix.getWidth() != dimension) {
+      matrix = new ByteMatrix(dimension, dimension);
+    }
+    if (unmaskedPenalty == null || unmaskedPenalty.getDimension() != dimension) {
+      unmaskedPenalty = new BitPackedMaskPenalty(dimension);
+      penaltyCalculators = new BitPackedMaskPenalty[QRCode.NUM_MASK_PATTERNS];
+      for (int i = 0; i < penaltyCalculators.length; i++) {
+        penaltyCalculators[i] = new BitPackedMaskPenalty(dimension);
+      }
+    }
+    MaskSelectionStrategy strategy = maskSelectionStrategy(hints);
+    int maskPattern;
+    int maskPenalty;
+    if (strategy.getType() == MaskSelectionStrategy.Type.FIXED) {
+      maskPattern = strategy.getMaskPattern();
+      maskPenalty = -1;
+      MatrixUtil.buildMatrix(finalBits, ecLevel, version, maskPattern, matrix);
+    } else {
+      long bestKey;
+      if (executor == null || strategy.getType() != MaskSelectionStrategy.Type.FULL) {
+        bestKey = QREncoder.chooseMaskPattern(finalBits, ecLevel, version, matrix,
+            unmaskedPenalty, penaltyCalculators, maskEstimates, maskOrder, bestMaskKey, strategy);
+      } else {
+        bestKey = chooseMaskPatternInParallel(ecLevel, version, executor);
+      }
+      maskPattern = (int) (bestKey & 0x07);
+      maskPenalty = (int) (bestKey >>> 3);
+    }
+
+    qrCode.setECLevel(ecLevel);
+    qrCode.setMode(mode);
+    qrCode.setVersion(version);
+    qrCode.setMaskPattern(maskPattern);
+    qrCode.setMaskSelectionStrategy(strategy);
+    qrCode.setMaskPenalty(maskPenalty);
+    qrCode.setMatrix(matrix);
+    return qrCode;
+  }
+
+  /**
+   * 与 {@link #encode(String, ErrorCorrectionLevel, Map)} 相同，但返回一个独立的副本，
+   * 调用者可以长期持有
+   */
+  public QRCode encodeCopy(String content,
+                           ErrorCorrectionLevel ecLevel,
+                           Map<EncodeHintType,?> hints) throws WriterException {
+    return encode(content, ecLevel, hints).copy();
+  }
+
+  /**
+   * 把数据分成 RS 块并生成纠错码，先按列交错放入各块的数据，再交错放入纠错码（JISX0510:2004 8.6）。
+   * 数据块与纠错码块都放在会话持有的连续数组中，按块号计算偏移。结果写入 finalBits。
+   */
+  private void interleaveWithECBytes(int numTotalBytes,
+                                     int numDataBytes,
+                                     int numRSBlocks,
+                                     ExecutorService executor) throws WriterException {
+    if (headerAndDataBits.getSizeInBytes() != numDataBytes) {
+      throw new WriterException("Number of bits and data bytes does not match");
+    }
+
+    // 第一组的块较短，第二组每块多一个数据字节，纠错码长度相同
+    QREncoder.getNumDataBytesAndNumECBytesForBlockID(
+        numTotalBytes, numDataBytes, numRSBlocks, 0, numDataBytesInBlock, numEcBytesInBlock);
+    int numDataBytesInGroup1 = numDataBytesInBlock[0];
+    int numEcBytesPerBlock = numEcBytesInBlock[0];
+    int numRsBlocksInGroup1 = numRSBlocks - numTotalBytes % numRSBlocks;
+    int maxNumDataBytes = numRsBlocksInGroup1 == numRSBlocks
+        ? numDataBytesInGroup1 : numDataBytesInGroup1 + 1;
+
+    int numEcBytes = numEcBytesPerBlock * numRSBlocks;
+    if (ecCodewords.length < numEcBytes) {
+      ecCodewords = new byte[numEcBytes];
+    }
+    // 数据码字已经按字节存放，各块直接从中切分
+    byte[] dataCodewords = headerAndDataBits.getBytes();
+
+    if (executor == null || numRSBlocks == 1) {
+      generateECBytes(dataCodewords, ecCodewords, 0, numRSBlocks,
+          numDataBytesInGroup1, numRsBlocksInGroup1, numEcBytesPerBlock);
+    } else {
+      // 各块的输入和输出区域互不重叠，按处理器数目分段并发计算
+      int numTasks = Math.min(numRSBlocks, Runtime.getRuntime().availableProcessors());
+      List<Callable<Void>> tasks = new ArrayList<>(numTasks);
+      for (int task = 0; task < numTasks; task++) {
+        tasks.add(new ECBytesTask(dataCodewords, ecCodewords,
+            numRSBlocks * task / numTasks, numRSBlocks * (task + 1) / numTasks,
+            numDataBytesInGroup1, numRsBlocksInGroup1, numEcBytesPerBlock));
+      }
+      invokeAll(executor, tasks);
+    }
+
+    finalBits.reset();
+    // 首先放入数据块
+    for (int i = 0; i < maxNumDataBytes; ++i) {
+      for (int block = 0; block < numRSBlocks; ++block) {
+        if (i < blockSize(block, numDataBytesInGroup1, numRsBlocksInGroup1)) {
+          finalBits.appendBits(dataCodewords[blockOffset(block, numDataBytesInGroup1, numRsBlocksInGroup1) + i], 8);
+        }
+      }
+    }
+    // 其次，放入错误检测码块
+    for (int i = 0; i < numEcBytesPerBlock; ++i) {
+      for (int block = 0; block < numRSBlocks; ++block) {
+        finalBits.appendBits(ecCodewords[block * numEcBytesPerBlock + i], 8);
+      }
+    }
+    if (numTotalBytes != finalBits.getSizeInBytes()) {
+      throw new WriterException("Interleaving error: " + numTotalBytes + " and " +
+          finalBits.getSizeInBytes() + " differ.");
+    }
+  }
+
+  /**
+   * 计算 [fromBlock, toBlock) 各块的纠错码
+   */
+  private static void generateECBytes(byte[] dataCodewords,
+                                      byte[] ecCodewords,
+                                      int fromBlock,
+                                      int toBlock,
+                                      int numDataBytesInGroup1,
+                                      int numRsBlocksInGroup1,
+                                      int numEcBytesPerBlock) {
+    for (int i = fromBlock; i < toBlock; ++i) {
+      int dataOffset = blockOffset(i, numDataBytesInGroup1, numRsBlocksInGroup1);
+      int size = blockSize(i, numDataBytesInGroup1, numRsBlocksInGroup1);
+      QRReedSolomon.encode(dataCodewords, dataOffset, size,
+          ecCodewords, i * numEcBytesPerBlock, numEcBytesPerBlock);
+    }
+  }
+
+  /**
+   * 与 {@link QREncoder#chooseMaskPattern} 相同，但各掩码的异或与评分并发进行。各任务共享同一个上界，
+   * 先完成的掩码可以让其他任务提前放弃。
+   */
+  private long chooseMaskPatternInParallel(ErrorCorrectionLevel ecLevel,
+                                          Version version,
+                                          ExecutorService executor) throws WriterException {
+    MatrixUtil.buildUnmaskedMatrix(finalBits, version, matrix);
+    unmaskedPenalty.setMatrix(matrix);
+    bestMaskKey.set(Long.MAX_VALUE);
+    List<Callable<Void>> tasks = new ArrayList<>(QRCode.NUM_MASK_PATTERNS);
+    for (int maskPattern = 0; maskPattern < QRCode.NUM_MASK_PATTERNS; maskPattern++) {
+      tasks.add(new MaskPenaltyTask(unmaskedPenalty, version, ecLevel, maskPattern,
+          penaltyCalculators[maskPattern], bestMaskKey));
+    }
+    invokeAll(executor, tasks);
+
+    // 与顺序执行相同：取惩罚最小者，相同时取编号较小的掩码
+    long bestKey = bestMaskKey.get();
+    int bestMaskPattern = (int) (bestKey & 0x07);
+    MatrixUtil.applyDataMask(bestMaskPattern, version, matrix);
+    MatrixUtil.embedTypeInfo(ecLevel, bestMaskPattern, matrix);
+    return bestKey;
+  }
+
+  /**
+   * @return hints 中的掩码选择策略，未设置时为 {@link MaskSelectionStrategy#FULL}
+   */
+  private static MaskSelectionStrategy maskSelectionStrategy(Map<EncodeHintType,?> hints) {
+    if (hints == null) {
+      return MaskSelectionStrategy.FULL;
+    }
+    MaskSelectionStrategy strategy = (MaskSelectionStrategy) hints.get(EncodeHintType.MASK_SELECTION);
+    if (strategy != null) {
+      return strategy;
+    }
+    Integer maskPattern = (Integer) hints.get(EncodeHintType.MASK_PATTERN);
+    return maskPattern == null ? MaskSelectionStrategy.FULL : MaskSelectionStrategy.fixed(maskPattern);
+  }
+
+  /**
+   * @return 本次编码使用的线程池，不需要并行时返回 null
+   */
+  private static ExecutorService parallelExecutor(Map<EncodeHintType,?> hints, Version version) {
+    if (hints == null) {
+      return null;
+    }
+    ExecutorService executor = (ExecutorService) hints.get(EncodeHintType.PARALLEL_EXECUTOR);
+    if (executor == null) {
+      return null;
+    }
+    Integer minVersion = (Integer) hints.get(EncodeHintType.PARALLEL_MIN_VERSION);
+    int threshold = minVersion == null ? DEFAULT_PARALLEL_MIN_VERSION : minVersion;
+    return version.getVersionNumber() >= threshold ? executor : null;
+  }
+
+  static <T> List<T> invokeAll(ExecutorService executor,
+                                       List<Callable<T>> tasks) throws WriterException {
+    try {
+      List<Future<T>> futures = executor.invokeAll(tasks);
+      List<T> results = new ArrayList<>(futures.size());
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new WriterException(ie);
+    } catch (ExecutionException ee) {
+      Throwable cause = ee.getCause();
+      if (cause instanceof WriterException) {
+        throw (WriterException) cause;
+      }
+      throw new WriterException(cause);
+    }
+  }
+
+  private static final class ECBytesTask implements Callable<Void> {
+    private final byte[] dataCodewords;
+    private final byte[] ecCodewords;
+    private final int fromBlock;
+    private final int toBlock;
+    private final int numDataBytesInGroup1;
+    private final int numRsBlocksInGroup1;
+    private final int numEcBytesPerBlock;
+
+    ECBytesTask(byte[] dataCodewords,
+                byte[] ecCodewords,
+                int fromBlock,
+                int toBlock,
+                int numDataBytesInGroup1,
+                int numRsBlocksInGroup1,
+                int numEcBytesPerBlock) {
+      this.dataCodewords = dataCodewords;
+      this.ecCodewords = ecCodewords;
+      this.fromBlock = fromBlock;
+      this.toBlock = toBlock;
+      this.numDataBytesInGroup1 = numDataBytesInGroup1;
+      this.numRsBlocksInGroup1 = numRsBlocksInGroup1;
+      this.numEcBytesPerBlock = numEcBytesPerBlock;
+    }
+
+    @Override
+    public Void call() {
+      generateECBytes(dataCodewords, ecCodewords, fromBlock, toBlock,
+          numDataBytesInGroup1, numRsBlocksInGroup1, numEcBytesPerBlock);
+      return null;
+    }
+  }
+
+  private static final class MaskPenaltyTask implements Callable<Void> {
+    private final BitPackedMaskPenalty unmasked;
+    private final Version version;
+    private final ErrorCorrectionLevel ecLevel;
+    private final int maskPattern;
+    private final BitPackedMaskPenalty penaltyCalculator;
+    private final AtomicLong bestKey;
+
+    MaskPenaltyTask(BitPackedMaskPenalty unmasked,
+                    Version version,
+                    ErrorCorrectionLevel ecLevel,
+                    int maskPattern,
+                    BitPackedMaskPenalty penaltyCalculator,
+                    AtomicLong bestKey) {
+      this.unmasked = unmasked;
+      this.version = version;
+      this.ecLevel = ecLevel;
+      this.maskPattern = maskPattern;
+      this.penaltyCalculator = penaltyCalculator;
+      this.bestKey = bestKey;
+    }
+
+    @Override
+    public Void call() throws WriterException {
+      penaltyCalculator.setMaskedMatrix(unmasked, MaskBitplane.forVersion(version, maskPattern));
+      penaltyCalculator.setTypeInfo(MatrixUtil.makeTypeInfo(ecLevel, maskPattern));
+      penaltyCalculator.calculatePenalty(maskPattern,
+          penaltyCalculator.applyRule4() + penaltyCalculator.applyRule2(), bestKey);
+      return null;
+    }
+  }
+
+  private static int blockSize(int block, int numDataBytesInGroup1, int numRsBlocksInGroup1) {
+    return block < numRsBlocksInGroup1 ? numDataBytesInGroup1 : numDataBytesInGroup1 + 1;
+  }
+
+  private static int blockOffset(int block, int numDataBytesInGroup1, int numRsBlocksInGroup1) {
+    return block * numDataBytesInGroup1 + Math.max(0, block - numRsBlocksInGroup1);
+  }
+
+}
@@ -0,0 +1,103 @@
+package com.vanstone.encoder;
+
+/**
+ * 二维码专用的 Reed-Solomon 纠错码计算。
+ * <p>
+ * 与 {@link ReedSolomonEncoder} 的多项式除法结果相同，但使用移位寄存器（LFSR）直接在数组上求余式：
+ * 生成多项式的系数以对数形式取自共享的 {@link GeneratorPolynomials#QR_CODE}，乘法变成一次查表加法；
+ * 指数表长度加倍，两个对数相加后不需要再取模。计算过程中不分配任何对象。
+ * </p>
+ * <p>
+ * 只支持 GF(256)（{@link GenericGF#QR_CODE_FIELD_256}），纠错码长度 1 到 {@link #MAX_EC_BYTES}，
+ * 覆盖二维码使用的所有块长度（7 到 30）。所有表在类加载时建立，之后只读，可被多个线程共享。
+ * </p>
+ */
+public final class QRReedSolomon {
+
+  /** 二维码单个块的最大纠错码字数 */
+  public static final int MAX_EC_BYTES = 30;
+
+  // exp 表长度为 2 * 255，log(a) + log(b) 最大为 508，不需要 % 255
+  private static final int[] EXP_TABLE = new int[2 * 255 + 2];
+  private static final int[] LOG_TABLE = new int[256];
+
+  static {
+    GenericGF field = GenericGF.QR_CODE_FIELD_256;
+    for (int i = 0; i < 255; i++) {
+      int value = field.exp(i);
+      EXP_TABLE[i] = value;
+      EXP_TABLE[i + 255] = value;
+      LOG_TABLE[value] = i;
+    }
+    EXP_TABLE[510] = field.exp(0);
+    EXP_TABLE[511] = field.exp(1);
+  }
+
+  private QRReedSolomon() {
+  }
+
+  /**
+   * 计算 data[dataOffset, dataOffset + numDataBytes) 的纠错码，写入 ec[ecOffset, ecOffset + numEcBytes)
+   *
+   * @throws IllegalArgumentException 如果纠错码长度不受支持
+   */
+  public static void encode(byte[] data, int dataOffset, int numDataBytes,
+                            byte[] ec, int ecOffset, int numEcBytes) {
+    int[] generator = generatorLogs(numEcBytes);
+    int last = ecOffset + numEcBytes - 1;
+    for (int i = ecOffset; i <= last; i++) {
+      ec[i] = 0;
+    }
+    int end = dataOffset + numDataBytes;
+    for (int i = dataOffset; i < end; i++) {
+      int feedback = (data[i] ^ ec[ecOffset]) & 0xFF;
+      System.arraycopy(ec, ecOffset + 1, ec, ecOffset, numEcBytes - 1);
+      ec[last] = 0;
+      if (feedback != 0) {
+        int logFeedback = LOG_TABLE[feedback];
+        for (int j = 0; j < numEcBytes; j++) {
+          ec[ecOffset + j] ^= EXP_TABLE[logFeedback + generator[j]];
+        }
+      }
+    }
+  }
+
+  /**
+   * 与 {@link #encode(byte[], int, int, byte[], int, int)} 相同，数据与纠错码都放在 toEncode 中：
+   * 前 numDataBytes 个元素为数据，紧接着的 numEcBytes 个元素写入纠错码。
+   */
+  public static void encode(int[] toEncode, int numDataBytes, int numEcBytes) {
+    int[] generator = generatorLogs(numEcBytes);
+    int ecOffset = numDataBytes;
+    int last = ecOffset + numEcBytes - 1;
+    for (int i = ecOffset; i <= last; i++) {
+      toEncode[i] = 0;
+    }
+    for (int i = 0; i < numDataBytes; i++) {
+      int feedback = toEncode[i] ^ toEncode[ecOffset];
+      System.arraycopy(toEncode, ecOffset + 1, toEncode, ecOffset, numEcBytes - 1);
+      toEncode[last] = 0;
+      if (feedback != 0) {
+        int logFeedback = LOG_TABLE[feedback];
+        for (int j = 0; j < numEcBytes; j++) {
+          toEncode[ecOffset + j] ^= EXP_TABLE[logFeedback + generator[j]];
+        }
+      }
+    }
+  }
+
+  /**
+   * @return 是否支持该纠错码长度
+   */
+  public static boolean isSupported(int numEcBytes) {
+    return numEcBytes >= 1 && numEcBytes <= MAX_EC_BYTES;
+  }
+
+  private static int[] generatorLogs(int numEcBytes) {
+    if (!isSupported(numEcBytes)) {
+      throw new IllegalArgumentException("Unsupported number of EC bytes: " + numEcBytes);
+    }
+    return GeneratorPolynomials.QR_CODE.getLogCoefficients(numEcBytes);
+  }
+
+}
@@ -1,41 +1,39 @@
 package com.vanstone.encoder;
 
-import java.util.ArrayList;
-import java.util.List;
-
 
+/**
+ * Reed-Solomon 编码器。生成多项式取自 {@link GeneratorPolynomials}，实例不含可变状态，可以被多个线程共享。
+ */
 public final class ReedSolomonEncoder {
 	private final GenericGF field;
-	  private final List<GenericGFPoly> cachedGenerators;
+	  private final GeneratorPolynomials generators;
 
 	  public ReedSolomonEncoder(GenericGF field) {
 	    this.field = field;
-	    this.cachedGenerators = new ArrayList<>();
-	    cachedGenerators.add(new GenericGFPoly(field, new int[]{1}));
+	    this.generators = GeneratorPolynomials.forField(field);
 	  }
 
-	  private GenericGFPoly buildGenerator(int degree) {
-	    if (degree >= cachedGenerators.size()) {
-	      GenericGFPoly lastGenerator = cachedGenerators.get(cachedGenerators.size() - 1);
-	      for (int d = cachedGenerators.size(); d <= degree; d++) {
-	        GenericGFPoly nextGenerator = lastGenerator.multiply(
-	            new GenericGFPoly(field, new int[] { 1, field.exp(d - 1 + field.getGeneratorBase()) }));
-	        cachedGenerators.add(nextGenerator);
-	        lastGenerator = nextGenerator;
-	      }
-	    }
-	    return cachedGenerators.get(degree);
+	  public void encode(int[] toEncode, int ecBytes) {
+	    encode(toEncode, toEncode.length - ecBytes, ecBytes);
 	  }
 
-	  public void encode(int[] toEncode, int ecBytes) {
+	  /**
+	   * 与 {@link #encode(int[], int)} 相同，但只使用 toEncode 的前 dataBytes + ecBytes 个元素，
+	   * 以便调用者重复使用一个足够大的缓冲区
+	   */
+	  public void encode(int[] toEncode, int dataBytes, int ecBytes) {
 	    if (ecBytes == 0) {
 	      throw new IllegalArgumentException("No error correction bytes");
 	    }
-	    int dataBytes = toEncode.length - ecBytes;
 	    if (dataBytes <= 0) {
 	      throw new IllegalArgumentException("No data bytes provided");
 	    }
-	    GenericGFPoly generator = buildGenerator(ecBytes);
+	    if (field == GenericGF.QR_CODE_FIELD_256 && QRReedSolomon.isSupported(ecBytes)) {
+	      // 二维码使用查表的移位寄存器实现，不需要构造多项式
+	      QRReedSolomon.encode(toEncode, dataBytes, ecBytes);
+	      return;
+	    }
+	    GenericGFPoly generator = generators.get(ecBytes);
 	    int[] infoCoefficients = new int[dataBytes];
 	    System.arraycopy(toEncode, 0, infoCoefficients, 0, dataBytes);
 	    GenericGFPoly info = new GenericGFPoly(field, infoCoefficients);
@@ -0,0 +1,149 @@
+package com.vanstone.encoder;
+
+/**
+ * 放大后的二维码图像的只读视图，像素按需从模块矩阵计算，不生成 {@link BitMatrix}。
+ * <p>
+ * 尺寸、放大倍数和居中的边距与 {@link Encoder#encode} 完全相同，{@link #get(int, int)} 和
+ * {@link #getRow(int, BitArray)} 的结果也与它返回的 {@link BitMatrix} 相同；每个像素为常数时间，
+ * 内存只有模块矩阵本身。只需要读一遍像素（例如流式输出）时用 {@link Encoder#encodeView} 代替
+ * {@link Encoder#encode}，大尺寸的打印输出不再需要几百 KB 的位矩阵；确实需要位矩阵时调用 {@link #toBitMatrix()}。
+ * </p>
+ * <p>
+ * {@link #get(int, int)} 是线程安全的；{@link #getRow(int, BitArray)} 使用视图持有的行缓冲区，不是线程安全的。
+ * </p>
+ */
+public final class ScaledSymbolView {
+
+  private final ByteMatrix input;
+  private final int width;
+  private final int height;
+  private final int multiple;
+  private final int leftPadding;
+  private final int topPadding;
+  private MatrixRenderer renderer;
+
+  /**
+   * @param input 二维码矩阵，1 为黑色
+   * @param width 请求的宽度，不足时取加上空白区后的矩阵宽度
+   * @param height 请求的高度，不足时取加上空白区后的矩阵高度
+   * @param quietZone 四周空白区的模块数
+   */
+  public ScaledSymbolView(ByteMatrix input, int width, int height, int quietZone) {
+    if (width < 0 || height < 0 || quietZone < 0) {
+      throw new IllegalArgumentException("Invalid size: " + width + 'x' + height + ", quiet zone " + quietZone);
+    }
+    int inputWidth = input.getWidth();
+    int inputHeight = input.getHeight();
+    int qrWidth = inputWidth + (quietZone * 2);
+    int qrHeight = inputHeight + (quietZone * 2);
+    this.input = input;
+    this.width = Math.max(width, qrWidth);
+    this.height = Math.max(height, qrHeight);
+    this.multiple = Math.min(this.width / qrWidth, this.height / qrHeight);
+    //二维码空白部分的填补包括两部分，一部分是设置的四周页边距，另一部分是额外的
+    //空白像素(为了适应请求输出图像的大小)，例如输入25*25的二维码，加上四周页边距（4）
+    //后的实际大小为33*33。这时，如果请求输出一个200*160大小的图片时，此时的扩大倍数
+    //应该为160/33=4,因此须将从100*100（实际的QR）填补到200*160.
+    this.leftPadding = (this.width - (inputWidth * multiple)) / 2;
+    this.topPadding = (this.height - (inputHeight * multiple)) / 2;
+  }
+
+  /**
+   * @return 图像宽度（像素）
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * @return 图像高度（像素）
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return 每个模块的像素数
+   */
+  public int getMultiple() {
+    return multiple;
+  }
+
+  /**
+   * @param x 列
+   * @param y 行
+   * @return 该像素是否为黑色
+   */
+  public boolean get(int x, int y) {
+    if (x < 0 || x >= width || y < 0 || y >= height) {
+      throw new IndexOutOfBoundsException("(" + x + ", " + y + ")");
+    }
+    int moduleX = moduleIndex(x, leftPadding, input.getWidth());
+    int moduleY = moduleIndex(y, topPadding, input.getHeight());
+    return moduleX >= 0 && moduleY >= 0 && input.get(moduleX, moduleY) == 1;
+  }
+
+  /**
+   * 与 {@link BitMatrix#getRow(int, BitArray)} 相同：row 为 null 或者太短时分配新的 BitArray
+   *
+   * @param y 行
+   * @param row 可以复用的 BitArray
+   * @return 第 y 行的像素
+   */
+  public BitArray getRow(int y, BitArray row) {
+    if (y < 0 || y >= height) {
+      throw new IndexOutOfBoundsException("row: " + y);
+    }
+    if (row == null || row.getSize() < width) {
+      row = new BitArray(width);
+    } else {
+      row.clear();
+    }
+    int moduleY = moduleIndex(y, topPadding, input.getHeight());
+    if (moduleY < 0) {
+      return row;
+    }
+    int[] pixels = getRenderer().renderRow(input.getArray()[moduleY]);
+    if (pixels != null) {
+      for (int i = 0; i < pixels.length; i++) {
+        row.setBulk(i * 32, pixels[i]);
+      }
+    }
+    return row;
+  }
+
+  /**
+   * @return 与 {@link Encoder#encode} 相同的位矩阵；每个模块行只放大一次，再按行复制
+   */
+  public BitMatrix toBitMatrix() {
+    BitMatrix output = new BitMatrix(width, height);
+    MatrixRenderer rowRenderer = new MatrixRenderer(input.getWidth(), multiple, leftPadding, width);
+    byte[][] modules = input.getArray();
+    for (int inputY = 0, outputY = topPadding; inputY < input.getHeight(); inputY++, outputY += multiple) {
+      int[] pixels = rowRenderer.renderRow(modules[inputY]);
+      if (pixels != null) {
+        output.setRow(outputY, pixels);
+        output.replicateRow(outputY, multiple - 1);
+      }
+    }
+    return output;
+  }
+
+  private MatrixRenderer getRenderer() {
+    if (renderer == null) {
+      renderer = new MatrixRenderer(input.getWidth(), multiple, leftPadding, width);
+    }
+    return renderer;
+  }
+
+  // 像素坐标对应的模块坐标，在空白区或边距中时为 -1
+  private int moduleIndex(int pixel, int padding, int numModules) {
+    int offset = pixel - padding;
+    if (offset < 0) {
+      return -1;
+    }
+    int module = offset / multiple;
+    return module < numModules ? module : -1;
+  }
+
+}
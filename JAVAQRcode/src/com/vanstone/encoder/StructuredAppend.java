@@ -0,0 +1,251 @@
+package com.vanstone.encoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Structured Append：把一个内容分成最多 16 个符号（ISO 18004:2006, 8.3.11 / 附录 H）。
+ * <p>
+ * 每个符号以 20 位的头开始：模式指示符 0011、符号位置（4 位）、符号总数减一（4 位）以及整个内容
+ * 所有数据字节的异或（8 位），之后是该部分按 {@link MixedModeSegmenter} 最优分段的数据。
+ * </p>
+ * <p>
+ * 划分分三步，每步都用贪心法（每个符号尽量多放字符）检验可行性，贪心对单调的代价是最优的：
+ * </p>
+ * <ol>
+ *   <li>不超过最大版本时所需的最少符号数 N；</li>
+ *   <li>N 个符号时最大版本的最小值 V（对版本二分查找）；</li>
+ *   <li>版本不超过 V、N 个符号时单个符号最大位数的最小值（对位数二分查找），使各符号大小均衡。</li>
+ * </ol>
+ * <p>
+ * 各符号互不依赖，提供了 {@link EncodeHintType#PARALLEL_EXECUTOR} 时在该线程池中并发编码，
+ * 每个任务使用自己的 {@link QREncoderSession}。
+ * </p>
+ */
+final class StructuredAppend {
+
+  /** 最多的符号数 */
+  static final int MAX_SYMBOLS = 16;
+  // 模式指示符 4 位、符号位置 4 位、符号总数 4 位、奇偶校验 8 位
+  private static final int HEADER_BITS = 4 + 4 + 4 + 8;
+
+  private final ContentAnalysis content;
+  private final ErrorCorrectionLevel ecLevel;
+  private final boolean mayNeedECI;
+
+  private StructuredAppend(ContentAnalysis content, ErrorCorrectionLevel ecLevel) {
+    this.content = content;
+    this.ecLevel = ecLevel;
+    this.mayNeedECI = !content.getEncoding().isDefault() && content.getEncoding().getECI() != null;
+  }
+
+  /**
+   * @see QREncoder#encodeStructuredAppend(CharSequence, ErrorCorrectionLevel, int, Map)
+   */
+  static List<QRCode> encode(CharSequence content,
+                             ErrorCorrectionLevel ecLevel,
+                             int maxVersion,
+                             Map<EncodeHintType,?> hints) throws WriterException {
+    if (maxVersion < 1 || maxVersion > 40) {
+      throw new IllegalArgumentException("Invalid max version: " + maxVersion);
+    }
+    if (ContentAnalysis.useGS1(hints)) {
+      throw new WriterException("Structured Append does not support GS1_FORMAT");
+    }
+    CapacityPlanner.Estimate estimate = CapacityPlanner.estimate(content, ecLevel, hints);
+    if (estimate.fits() && estimate.getVersion().getVersionNumber() <= maxVersion) {
+      // 一个符号就放得下，不需要 Structured Append
+      return Collections.singletonList(QREncoder.encode(content, ecLevel, hints));
+    }
+
+    String encodingName = hints == null ? null : (String) hints.get(EncodeHintType.CHARACTER_SET);
+    if (encodingName == null) {
+      encodingName = QREncoder.DEFAULT_BYTE_MODE_ENCODING;
+    }
+    ContentAnalysis analysis = new ContentAnalysis();
+    CharacterEncoding encoding = CharacterEncoding.forName(encodingName);
+    analysis.reset(content, encoding, ContentAnalysis.useHanzi(encoding, hints));
+    StructuredAppend planner = new StructuredAppend(analysis, ecLevel);
+    int[] ends = planner.split(maxVersion);
+
+    int parity = 0;
+    byte[] bytes = analysis.getBytes();
+    for (int i = 0; i < analysis.getNumBytes(); i++) {
+      parity ^= bytes[i] & 0xFF;
+    }
+
+    List<MixedModeSegmenter> parts = new ArrayList<>(ends.length);
+    int start = 0;
+    for (int end : ends) {
+      parts.add(MixedModeSegmenter.segment(analysis, start, end, ecLevel, HEADER_BITS));
+      start = end;
+    }
+    return encodeParts(parts, parity, ecLevel, hints);
+  }
+
+  private static List<QRCode> encodeParts(List<MixedModeSegmenter> parts,
+                                          int parity,
+                                          ErrorCorrectionLevel ecLevel,
+                                          Map<EncodeHintType,?> hints) throws WriterException {
+    int total = parts.size();
+    ExecutorService executor = hints == null
+        ? null : (ExecutorService) hints.get(EncodeHintType.PARALLEL_EXECUTOR);
+    if (executor == null) {
+      QREncoderSession session = new QREncoderSession();
+      List<QRCode> result = new ArrayList<>(total);
+      for (int index = 0; index < total; index++) {
+        result.add(session.encodeStructuredAppendPart(parts.get(index), index, total, parity, ecLevel, hints)
+            .copy());
+      }
+      return result;
+    }
+    // 符号之间已经并发，符号内部不再使用同一个线程池，以免任务互相等待
+    Map<EncodeHintType,Object> partHints = new EnumMap<>(EncodeHintType.class);
+    partHints.putAll(hints);
+    partHints.remove(EncodeHintType.PARALLEL_EXECUTOR);
+    List<Callable<QRCode>> tasks = new ArrayList<>(total);
+    for (int index = 0; index < total; index++) {
+      tasks.add(new PartTask(parts.get(index), index, total, parity, ecLevel, partHints));
+    }
+    return QREncoderSession.invokeAll(executor, tasks);
+  }
+
+  /**
+   * @return 各符号的结束位置（不含），最后一个为内容长度
+   */
+  private int[] split(int maxVersion) throws WriterException {
+    int maxBits = Integer.MAX_VALUE;
+    int numSymbols = countSymbols(maxVersion, maxBits);
+    if (numSymbols > MAX_SYMBOLS) {
+      throw new WriterException("Data too big");
+    }
+
+    // 最大版本的最小值
+    int low = 1;
+    int high = maxVersion;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (countSymbols(middle, maxBits) <= numSymbols) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    int version = low;
+
+    // 单个符号最大位数的最小值
+    int lowBits = 0;
+    int highBits = CapacityPlanner.getNumDataCodewords(Version.getVersionForNumber(version), ecLevel) * 8;
+    while (lowBits < highBits) {
+      int middle = (lowBits + highBits) >>> 1;
+      if (countSymbols(version, middle) <= numSymbols) {
+        highBits = middle;
+      } else {
+        lowBits = middle + 1;
+      }
+    }
+    maxBits = lowBits;
+
+    // 位数和版本都更受限时符号数不会更少，因此恰好为 numSymbols
+    int[] ends = new int[numSymbols];
+    int start = 0;
+    for (int i = 0; i < numSymbols; i++) {
+      start = maxEnd(start, version, maxBits);
+      ends[i] = start;
+    }
+    return ends;
+  }
+
+  /**
+   * @return 每个符号尽量多放字符时需要的符号数，超过 {@link #MAX_SYMBOLS} 时返回 MAX_SYMBOLS + 1
+   */
+  private int countSymbols(int maxVersion, int maxBits) throws WriterException {
+    int count = 0;
+    int start = 0;
+    int length = content.length();
+    while (start < length) {
+      int end = maxEnd(start, maxVersion, maxBits);
+      if (end == start || ++count > MAX_SYMBOLS) {
+        return MAX_SYMBOLS + 1;
+      }
+      start = end;
+    }
+    return count;
+  }
+
+  /**
+   * @return 从 start 开始、版本不超过 maxVersion 且位数不超过 maxBits 的最长部分的结束位置；
+   *   一个字符都放不下时返回 start
+   */
+  private int maxEnd(int start, int maxVersion, int maxBits) throws WriterException {
+    // 每个字符至少占数字模式的 10/3 位，因此字符数不会超过该版本数字模式的容量
+    int maxLetters = CapacityPlanner.getCharacterCapacity(
+        Version.getVersionForNumber(maxVersion), ecLevel, Mode.NUMERIC);
+    int limit = boundary(Math.min(content.length(), start + maxLetters));
+    int end = MixedModeSegmenter.estimateMaxEnd(content, start, limit, ecLevel, HEADER_BITS, maxVersion, maxBits);
+    if (!mayNeedECI) {
+      // 没有 ECI 时估计与实际分段的位数相同
+      return end;
+    }
+    // 估计只会偏长，以实际分段的结果为准逐个缩短
+    while (end > start && !fits(start, end, maxVersion, maxBits)) {
+      end--;
+      while (end > start && boundary(end) != end) {
+        end--;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * @return 不把代理对分开的结束位置：end 处是低位代理（没有字节）时向后移一个字符
+   */
+  private int boundary(int end) {
+    if (end < content.length() && content.getByteOffset(end) == content.getByteOffset(end + 1)) {
+      return end + 1;
+    }
+    return end;
+  }
+
+  private boolean fits(int start, int end, int maxVersion, int maxBits) throws WriterException {
+    MixedModeSegmenter segmenter = MixedModeSegmenter.segment(content, start, end, ecLevel, HEADER_BITS);
+    return segmenter != null
+        && segmenter.getVersion().getVersionNumber() <= maxVersion
+        && HEADER_BITS + segmenter.getBitLength() <= maxBits;
+  }
+
+  private static final class PartTask implements Callable<QRCode> {
+    private final MixedModeSegmenter segmenter;
+    private final int index;
+    private final int total;
+    private final int parity;
+    private final ErrorCorrectionLevel ecLevel;
+    private final Map<EncodeHintType,?> hints;
+
+    PartTask(MixedModeSegmenter segmenter,
+             int index,
+             int total,
+             int parity,
+             ErrorCorrectionLevel ecLevel,
+             Map<EncodeHintType,?> hints) {
+      this.segmenter = segmenter;
+      this.index = index;
+      this.total = total;
+      this.parity = parity;
+      this.ecLevel = ecLevel;
+      this.hints = hints;
+    }
+
+    @Override
+    public QRCode call() throws WriterException {
+      // 每个任务使用自己的会话，返回的二维码不会再被复用
+      return new QREncoderSession().encodeStructuredAppendPart(segmenter, index, total, parity, ecLevel, hints);
+    }
+  }
+
+}
@@ -0,0 +1,347 @@
+package com.vanstone.encoder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 把二维码矩阵直接写成矢量图形（SVG、EPS 或单页 PDF），用于印刷和网页，与分辨率无关。
+ * <p>
+ * 坐标以模块为单位，只在开头用一次缩放换算成输出尺寸，因此每个矩形只写 4 个小整数。同一行中连续的黑色模块
+ * 合并为一个矩形；mergeRectangles 为 true 时再按贪心法向下扩展为尽量大的矩形（先向右、再向下，矩形互不重叠），
+ * 矩形数通常只有模块数的几分之一。所有矩形放在一个路径中，最后一次填充。
+ * </p>
+ * <p>
+ * 边扫描边写出，不构建 DOM，也不生成光栅；输出只含 ASCII 字符，可以写入任何 {@link Appendable}
+ * 或 {@link WritableByteChannel}。
+ * </p>
+ */
+public final class VectorWriter {
+
+  /**
+   * 输出格式
+   */
+  public enum Format {
+    /** SVG 文档，viewBox 以模块为单位，width、height 为 moduleSize 倍 */
+    SVG,
+    /** 封装的 PostScript，moduleSize 为每个模块的点数 */
+    EPS,
+    /** 单页 PDF 文档，moduleSize 为每个模块的点数 */
+    PDF
+  }
+
+  public static final int DEFAULT_QUIET_ZONE = 4;
+
+  private static final int BUFFER_SIZE = 4096;
+
+  private final Appendable out;
+  private final WritableByteChannel channel;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int bufferLength;
+  // 已写出的字符数，即 PDF 中的字节偏移量
+  private long position;
+  private ByteBuffer bytes;
+
+  private VectorWriter(Appendable out, WritableByteChannel channel) {
+    this.out = out;
+    this.channel = channel;
+  }
+
+  /**
+   * 以 {@link #DEFAULT_QUIET_ZONE} 个模块的空白区、每个模块 1 个单位写出，只合并同一行的连续模块
+   */
+  public static void write(ByteMatrix matrix, Format format, Appendable out) throws IOException {
+    write(matrix, format, DEFAULT_QUIET_ZONE, 1.0, false, out);
+  }
+
+  /**
+   * @param matrix 二维码矩阵，1 为黑色，例如 {@link QRCode#getMatrix()}
+   * @param format 输出格式
+   * @param quietZone 四周空白区的模块数
+   * @param moduleSize 每个模块的尺寸：SVG 为用户单位，EPS 和 PDF 为点（1/72 英寸）
+   * @param mergeRectangles 是否把相邻行的矩形合并为更大的矩形
+   * @param out 输出
+   */
+  public static void write(ByteMatrix matrix,
+                           Format format,
+                           int quietZone,
+                           double moduleSize,
+                           boolean mergeRectangles,
+                           Appendable out) throws IOException {
+    new VectorWriter(out, null).writeDocument(matrix, format, quietZone, moduleSize, mergeRectangles);
+  }
+
+  /**
+   * @see #write(ByteMatrix, Format, int, double, boolean, Appendable)
+   */
+  public static void write(ByteMatrix matrix,
+                           Format format,
+                           int quietZone,
+                           double moduleSize,
+                           boolean mergeRectangles,
+                           WritableByteChannel channel) throws IOException {
+    new VectorWriter(null, channel).writeDocument(matrix, format, quietZone, moduleSize, mergeRectangles);
+  }
+
+  /**
+   * 只写出 PDF 内容流中的绘图命令（不含 stream 关键字），用于嵌入已有的页面：
+   * 以页面左下角为原点，二维码连同空白区占据 (quietZone * 2 + 宽度) * moduleSize 点见方
+   */
+  public static void writePdfContent(ByteMatrix matrix,
+                                     int quietZone,
+                                     double moduleSize,
+                                     boolean mergeRectangles,
+                                     Appendable out) throws IOException {
+    checkArguments(quietZone, moduleSize);
+    VectorWriter writer = new VectorWriter(out, null);
+    writer.writePdfContent(matrix, quietZone, moduleSize, mergeRectangles);
+    writer.flush();
+  }
+
+  private void writeDocument(ByteMatrix matrix,
+                             Format format,
+                             int quietZone,
+                             double moduleSize,
+                             boolean mergeRectangles) throws IOException {
+    checkArguments(quietZone, moduleSize);
+    switch (format) {
+      case SVG:
+        writeSvg(matrix, quietZone, moduleSize, mergeRectangles);
+        break;
+      case EPS:
+        writeEps(matrix, quietZone, moduleSize, mergeRectangles);
+        break;
+      case PDF:
+        writePdf(matrix, quietZone, moduleSize, mergeRectangles);
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported format: " + format);
+    }
+    flush();
+  }
+
+  private void writeSvg(ByteMatrix matrix, int quietZone, double moduleSize, boolean mergeRectangles)
+      throws IOException {
+    int width = matrix.getWidth() + quietZone * 2;
+    int height = matrix.getHeight() + quietZone * 2;
+    append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    append("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" viewBox=\"0 0 ").append(width)
+        .append(' ').append(height).append("\" width=\"").append(moduleSize * width)
+        .append("\" height=\"").append(moduleSize * height).append("\" shape-rendering=\"crispEdges\">\n");
+    append("<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>\n");
+    append("<path fill=\"#000\" d=\"");
+    writeRectangles(matrix, quietZone, mergeRectangles, Format.SVG);
+    append("\"/>\n</svg>\n");
+  }
+
+  private void writeEps(ByteMatrix matrix, int quietZone, double moduleSize, boolean mergeRectangles)
+      throws IOException {
+    double width = moduleSize * (matrix.getWidth() + quietZone * 2);
+    double height = moduleSize * (matrix.getHeight() + quietZone * 2);
+    append("%!PS-Adobe-3.0 EPSF-3.0\n");
+    append("%%BoundingBox: 0 0 ").append((int) Math.ceil(width)).append(' ')
+        .append((int) Math.ceil(height)).append('\n');
+    append("%%HiResBoundingBox: 0 0 ").append(width).append(' ').append(height).append('\n');
+    append("%%EndComments\n");
+    append("gsave\n");
+    // 原点移到左上角，y 轴向下，以模块为单位
+    append("0 ").append(height).append(" translate ").append(moduleSize).append(' ').append(-moduleSize)
+        .append(" scale\n");
+    append("0 setgray\n");
+    append("/R {rectfill} bind def\n");
+    writeRectangles(matrix, quietZone, mergeRectangles, Format.EPS);
+    append("grestore\n");
+    append("%%EOF\n");
+  }
+
+  private void writePdf(ByteMatrix matrix, int quietZone, double moduleSize, boolean mergeRectangles)
+      throws IOException {
+    double width = moduleSize * (matrix.getWidth() + quietZone * 2);
+    double height = moduleSize * (matrix.getHeight() + quietZone * 2);
+    long[] offsets = new long[6];
+    append("%PDF-1.4\n");
+    offsets[1] = position;
+    append("1 0 obj\n<</Type/Catalog/Pages 2 0 R>>\nendobj\n");
+    offsets[2] = position;
+    append("2 0 obj\n<</Type/Pages/Kids[3 0 R]/Count 1>>\nendobj\n");
+    offsets[3] = position;
+    append("3 0 obj\n<</Type/Page/Parent 2 0 R/MediaBox[0 0 ").append(width).append(' ').append(height)
+        .append("]/Resources<<>>/Contents 4 0 R>>\nendobj\n");
+    offsets[4] = position;
+    // 内容流写完才知道长度，放在间接对象 5 中
+    append("4 0 obj\n<</Length 5 0 R>>\nstream\n");
+    long streamStart = position;
+    writePdfContent(matrix, quietZone, moduleSize, mergeRectangles);
+    long streamLength = position - streamStart;
+    append("endstream\nendobj\n");
+    offsets[5] = position;
+    append("5 0 obj\n").append(streamLength).append("\nendobj\n");
+    long xref = position;
+    append("xref\n0 6\n0000000000 65535 f \n");
+    for (int i = 1; i < offsets.length; i++) {
+      String offset = Long.toString(offsets[i]);
+      for (int j = offset.length(); j < 10; j++) {
+        append('0');
+      }
+      append(offset).append(" 00000 n \n");
+    }
+    append("trailer\n<</Size 6/Root 1 0 R>>\nstartxref\n").append(xref).append("\n%%EOF\n");
+  }
+
+  private void writePdfContent(ByteMatrix matrix, int quietZone, double moduleSize, boolean mergeRectangles)
+      throws IOException {
+    double height = moduleSize * (matrix.getHeight() + quietZone * 2);
+    // 原点移到左上角，y 轴向下，以模块为单位
+    append("q\n").append(moduleSize).append(" 0 0 ").append(-moduleSize).append(" 0 ").append(height)
+        .append(" cm\n0 g\n");
+    writeRectangles(matrix, quietZone, mergeRectangles, Format.PDF);
+    append("f\nQ\n");
+  }
+
+  /**
+   * 按行从上到下写出覆盖所有黑色模块的互不重叠的矩形
+   */
+  private void writeRectangles(ByteMatrix matrix, int quietZone, boolean mergeRectangles, Format format)
+      throws IOException {
+    int width = matrix.getWidth();
+    int height = matrix.getHeight();
+    byte[][] modules = matrix.getArray();
+    // 已被之前的矩形覆盖的模块，只在合并矩形时使用
+    boolean[] covered = mergeRectangles ? new boolean[width * height] : null;
+    for (int y = 0; y < height; y++) {
+      byte[] row = modules[y];
+      int x = 0;
+      while (x < width) {
+        if (row[x] != 1 || (covered != null && covered[y * width + x])) {
+          x++;
+          continue;
+        }
+        int start = x;
+        while (x < width && row[x] == 1 && (covered == null || !covered[y * width + x])) {
+          x++;
+        }
+        int rectangleHeight = 1;
+        if (covered != null) {
+          rectangleHeight = extendDown(modules, covered, width, start, x, y);
+        }
+        appendRectangle(format, start + quietZone, y + quietZone, x - start, rectangleHeight);
+      }
+    }
+  }
+
+  // 在 [start, end) 各列都是未覆盖的黑色模块时向下扩展，标记覆盖的模块并返回矩形高度
+  private static int extendDown(byte[][] modules, boolean[] covered, int width, int start, int end, int top) {
+    int bottom = top + 1;
+    while (bottom < modules.length && isUncoveredRun(modules[bottom], covered, bottom * width, start, end)) {
+      bottom++;
+    }
+    for (int y = top + 1; y < bottom; y++) {
+      for (int x = start; x < end; x++) {
+        covered[y * width + x] = true;
+      }
+    }
+    return bottom - top;
+  }
+
+  private static boolean isUncoveredRun(byte[] row, boolean[] covered, int offset, int start, int end) {
+    for (int x = start; x < end; x++) {
+      if (row[x] != 1 || covered[offset + x]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void appendRectangle(Format format, int x, int y, int width, int height) throws IOException {
+    switch (format) {
+      case SVG:
+        append('M').append(x).append(' ').append(y).append('h').append(width).append('v').append(height)
+            .append("h-").append(width).append('z');
+        break;
+      case EPS:
+        append(x).append(' ').append(y).append(' ').append(width).append(' ').append(height).append(" R\n");
+        break;
+      default:
+        append(x).append(' ').append(y).append(' ').append(width).append(' ').append(height).append(" re\n");
+        break;
+    }
+  }
+
+  private static void checkArguments(int quietZone, double moduleSize) {
+    if (quietZone < 0) {
+      throw new IllegalArgumentException("Negative quiet zone: " + quietZone);
+    }
+    if (!(moduleSize > 0) || Double.isInfinite(moduleSize)) {
+      throw new IllegalArgumentException("Invalid module size: " + moduleSize);
+    }
+  }
+
+  private VectorWriter append(String s) throws IOException {
+    for (int i = 0; i < s.length(); i++) {
+      append(s.charAt(i));
+    }
+    return this;
+  }
+
+  private VectorWriter append(char c) throws IOException {
+    if (bufferLength == BUFFER_SIZE) {
+      flushBuffer();
+    }
+    buffer[bufferLength++] = c;
+    position++;
+    return this;
+  }
+
+  // 整数直接写入缓冲区，不生成字符串
+  private VectorWriter append(long value) throws IOException {
+    if (value < 0) {
+      append('-');
+      value = -value;
+    }
+    long divisor = 1;
+    while (divisor <= value / 10) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      append((char) ('0' + (value / divisor) % 10));
+    }
+    return this;
+  }
+
+  // 最多 4 位小数，不使用科学计数法
+  private VectorWriter append(double value) throws IOException {
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return append((long) value);
+    }
+    return append(new BigDecimal(value).setScale(4, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString());
+  }
+
+  private void flushBuffer() throws IOException {
+    if (out != null) {
+      out.append(CharBuffer.wrap(buffer, 0, bufferLength));
+    } else {
+      if (bytes == null) {
+        bytes = ByteBuffer.allocate(BUFFER_SIZE);
+      }
+      bytes.clear();
+      for (int i = 0; i < bufferLength; i++) {
+        bytes.put((byte) buffer[i]);
+      }
+      bytes.flip();
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+    }
+    bufferLength = 0;
+  }
+
+  private void flush() throws IOException {
+    if (bufferLength > 0) {
+      flushBuffer();
+    }
+  }
+
+}
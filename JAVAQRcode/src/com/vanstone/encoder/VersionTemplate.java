@@ -0,0 +1,140 @@
+package com.vanstone.encoder;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 每个版本的矩阵模板。
+ * <p>
+ * 位置探测图形、分隔符、定位图形、校正图形、暗点和版本信息只与版本有关，模板在第一次使用时按
+ * {@link MatrixUtil} 原有的步骤构建一次，之后只读：
+ * </p>
+ * <ul>
+ *   <li>功能图形矩阵：格式信息的位置为 0，其余数据模块为 -1（空）；</li>
+ *   <li>按放置顺序排列的数据模块坐标 (y &lt;&lt; 8) | x，即 8.7 节的之字形路径。</li>
+ * </ul>
+ * <p>
+ * 构建一个符号只需复制模板，再沿路径线性写入码字各位。模板可被多个线程共享；
+ * 并发首次使用时可能重复构建，但结果相同，只会保留其中一份。
+ * </p>
+ */
+final class VersionTemplate {
+
+  private static final AtomicReferenceArray<VersionTemplate> TEMPLATES =
+      new AtomicReferenceArray<>(40);
+
+  private final int dimension;
+  private final int wordsPerRow;
+  private final byte[][] functionPatterns;
+  private final int[] dataModules;
+
+  private VersionTemplate(Version version) throws WriterException {
+    dimension = version.getDimensionForVersion();
+    ByteMatrix matrix = new ByteMatrix(dimension, dimension);
+    MatrixUtil.clearMatrix(matrix);
+    MatrixUtil.embedBasicPatterns(version, matrix);
+    // 格式信息随纠错等级和掩码变化，模板中统一为 0；先占住这些位置，数据位才会跳过它们
+    MatrixUtil.embedTypeInfo(0, matrix);
+    MatrixUtil.maybeEmbedVersionInfo(version, matrix);
+    byte[][] array = matrix.getArray();
+
+    wordsPerRow = (dimension + 63) >>> 6;
+
+    dataModules = new int[MatrixUtil.getNumDataModules(version)];
+    int numDataModules = 0;
+    int direction = -1;
+    // Start from the right bottom cell.
+    int x = dimension - 1;
+    int y = dimension - 1;
+    while (x > 0) {
+      // Skip the vertical timing pattern.
+      if (x == 6) {
+        x -= 1;
+      }
+      while (y >= 0 && y < dimension) {
+        for (int i = 0; i < 2; ++i) {
+          int xx = x - i;
+          if (array[y][xx] == -1) {
+            dataModules[numDataModules++] = (y << 8) | xx;
+          }
+        }
+        y += direction;
+      }
+      direction = -direction;  // Reverse the direction.
+      y += direction;
+      x -= 2;  // Move to the left.
+    }
+    if (numDataModules != dataModules.length) {
+      throw new WriterException("Data modules: " + numDataModules + " != " + dataModules.length);
+    }
+
+    functionPatterns = array;
+  }
+
+  /**
+   * @return 该版本的模板，第一次使用时构建
+   */
+  static VersionTemplate forVersion(Version version) throws WriterException {
+    int index = version.getVersionNumber() - 1;
+    VersionTemplate template = TEMPLATES.get(index);
+    if (template == null) {
+      template = new VersionTemplate(version);
+      if (!TEMPLATES.compareAndSet(index, null, template)) {
+        template = TEMPLATES.get(index);
+      }
+    }
+    return template;
+  }
+
+  int getDimension() {
+    return dimension;
+  }
+
+  /**
+   * @return 按放置顺序排列的数据模块坐标 (y &lt;&lt; 8) | x，调用者不得修改
+   */
+  int[] getDataModules() {
+    return dataModules;
+  }
+
+  int getNumDataModules() {
+    return dataModules.length;
+  }
+
+  /**
+   * @return 按行压缩的位图（例如 {@link MaskBitplane}）每行的 long 数，第 x 列位于第 x / 64 个字的第 x % 64 位
+   */
+  int getWordsPerRow() {
+    return wordsPerRow;
+  }
+
+  /**
+   * 把功能图形复制到 matrix，数据模块置为 -1（空），格式信息置为 0
+   */
+  void copyTo(ByteMatrix matrix) {
+    if (matrix.getWidth() != dimension || matrix.getHeight() != dimension) {
+      throw new IllegalArgumentException("Matrix dimension does not match: " + matrix.getWidth());
+    }
+    byte[][] target = matrix.getArray();
+    for (int y = 0; y < dimension; y++) {
+      System.arraycopy(functionPatterns[y], 0, target[y], 0, dimension);
+    }
+  }
+
+  /**
+   * 沿数据路径依次写入 dataBits 的各位，不足的部分补 0（8.4.9 节的剩余位），不加掩码
+   */
+  void embedDataBits(BitWriter dataBits, ByteMatrix matrix) throws WriterException {
+    int numBits = dataBits.getSize();
+    if (numBits > dataModules.length) {
+      throw new WriterException("Not all bits consumed: " + dataModules.length + '/' + numBits);
+    }
+    byte[] bytes = dataBits.getBytes();
+    byte[][] array = matrix.getArray();
+    for (int i = 0; i < dataModules.length; i++) {
+      int module = dataModules[i];
+      int bit = i < numBits ? (bytes[i >>> 3] >>> (7 - (i & 0x07))) & 1 : 0;
+      array[module >>> 8][module & 0xFF] = (byte) bit;
+    }
+  }
+
+}
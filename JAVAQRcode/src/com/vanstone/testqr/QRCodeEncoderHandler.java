@@ -3,10 +3,10 @@ package com.vanstone.testqr;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
-import java.awt.image.BufferedImage;
-import java.awt.image.RenderedImage;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Hashtable;
 
 import javax.imageio.ImageIO;
@@ -15,10 +15,11 @@ import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JTextField;
-import com.vanstone.encoder.BarcodeFormat;
-import com.vanstone.encoder.BitMatrix;
 import com.vanstone.encoder.EncodeHintType;
-import com.vanstone.encoder.Encoder;
+import com.vanstone.encoder.ErrorCorrectionLevel;
+import com.vanstone.encoder.PngWriter;
+import com.vanstone.encoder.QRCode;
+import com.vanstone.encoder.QREncoder;
 
 public class QRCodeEncoderHandler extends JFrame implements ActionListener {
 
@@ -27,6 +28,9 @@ public class QRCodeEncoderHandler extends JFrame implements ActionListener {
 	private JTextField edittext;
 	private static QRCodeEncoderHandler handler;
 	private static String imgPath = "D:/test/Michael_QRCode.png";
+	// 图片大约200*200，四周留4个模块的空白
+	private static final int IMAGE_SIZE = 200;
+	private static final int QUIET_ZONE = 4;
 
 	public QRCodeEncoderHandler() {
 		super();
@@ -75,25 +79,19 @@ public class QRCodeEncoderHandler extends JFrame implements ActionListener {
 			// 输出内容> 二维码
 			Hashtable<EncodeHintType, String> hints = new Hashtable<EncodeHintType, String>();
 			hints.put(EncodeHintType.CHARACTER_SET, "utf-8");
-			BitMatrix bitMatrix = new Encoder().encode(content,
-					BarcodeFormat.QR_CODE, 200, 200, hints);
+			QRCode code = QREncoder.encode(content, ErrorCorrectionLevel.L, hints);
 
 			if (contentBytes.length > 0 && contentBytes.length < 120) {
 
-				int[] pixels = new int[200 * 200];
-
-				for (int y = 0; y < 200; y++) {
-					for (int x = 0; x < 200; x++) {
-						if (bitMatrix.get(x, y)) {
-							pixels[y * 200 + x] = 0xff000000;
-						} else {
-							pixels[y * 200 + x] = 0xffffffff;
-						}
-
-					}
+				// 直接从模块矩阵写出放大后的1位灰度PNG，不生成位矩阵或整幅ARGB图像
+				int modules = code.getMatrix().getWidth() + 2 * QUIET_ZONE;
+				int scale = Math.max(1, IMAGE_SIZE / modules);
+				OutputStream out = new FileOutputStream(imgPath);
+				try {
+					PngWriter.write(code.getMatrix(), scale, QUIET_ZONE, out);
+				} finally {
+					out.close();
 				}
-
-				writeImageFromArray(imgPath, "jpg", pixels, 200, 200);
 				// pic.set
 
 			} else {
@@ -112,30 +110,6 @@ public class QRCodeEncoderHandler extends JFrame implements ActionListener {
 
 	}
 
-	public static void writeImageFromArray(String imageFile, String type,
-			int[] data, int width, int height) {
-
-		BufferedImage bf = new BufferedImage(width, height,
-				BufferedImage.TYPE_INT_BGR);
-
-		bf.setRGB(0, 0, width, height, data, 0, width);
-
-		// 输出图片
-
-		try {
-
-			File file = new File(imageFile);
-
-			ImageIO.write((RenderedImage) bf, type, file);
-
-		} catch (IOException e) {
-
-			e.printStackTrace();
-
-		}
-
-	}
-
 	/**
 	 * @param args
 	 */